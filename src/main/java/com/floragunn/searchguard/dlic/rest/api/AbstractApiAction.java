@@ -18,28 +18,43 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Semaphore;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.ElasticsearchParseException;
+import org.elasticsearch.ExceptionsHelper;
 import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.get.GetRequest;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetRequest;
+import org.elasticsearch.action.get.MultiGetResponse;
 import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.index.IndexResponse;
 import org.elasticsearch.action.support.WriteRequest.RefreshPolicy;
 import org.elasticsearch.client.Client;
 import org.elasticsearch.client.node.NodeClient;
 import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.bytes.BytesArray;
 import org.elasticsearch.common.bytes.BytesReference;
-import org.elasticsearch.common.collect.Tuple;
+import org.elasticsearch.common.lucene.uid.Versions;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.settings.Settings.Builder;
+import org.elasticsearch.common.util.concurrent.AbstractRunnable;
 import org.elasticsearch.common.util.concurrent.ThreadContext.StoredContext;
 import org.elasticsearch.common.xcontent.NamedXContentRegistry;
 import org.elasticsearch.common.xcontent.ToXContent;
@@ -49,13 +64,15 @@ import org.elasticsearch.common.xcontent.XContentHelper;
 import org.elasticsearch.common.xcontent.XContentParser;
 import org.elasticsearch.common.xcontent.XContentType;
 import org.elasticsearch.common.xcontent.json.JsonXContent;
+import org.elasticsearch.index.engine.VersionConflictEngineException;
 import org.elasticsearch.rest.BaseRestHandler;
 import org.elasticsearch.rest.BytesRestResponse;
+import org.elasticsearch.rest.RestChannel;
 import org.elasticsearch.rest.RestController;
 import org.elasticsearch.rest.RestRequest;
 import org.elasticsearch.rest.RestRequest.Method;
-import org.elasticsearch.rest.RestResponse;
 import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.search.fetch.subphase.FetchSourceContext;
 import org.elasticsearch.threadpool.ThreadPool;
 
 import com.floragunn.searchguard.action.configupdate.ConfigUpdateAction;
@@ -66,6 +83,8 @@ import com.floragunn.searchguard.auditlog.AuditLog;
 import com.floragunn.searchguard.configuration.AdminDNs;
 import com.floragunn.searchguard.configuration.IndexBaseConfigurationRepository;
 import com.floragunn.searchguard.configuration.PrivilegesEvaluator;
+import com.floragunn.searchguard.dlic.rest.support.JsonPatch;
+import com.floragunn.searchguard.dlic.rest.support.JsonPatch.JsonPatchException;
 import com.floragunn.searchguard.dlic.rest.support.Utils;
 import com.floragunn.searchguard.dlic.rest.validation.AbstractConfigurationValidator;
 import com.floragunn.searchguard.dlic.rest.validation.AbstractConfigurationValidator.ErrorType;
@@ -80,10 +99,35 @@ public abstract class AbstractApiAction extends BaseRestHandler {
 	protected final IndexBaseConfigurationRepository cl;
 	protected final ClusterService cs;
 	final ThreadPool threadPool;
-	private String searchguardIndex;
+	private final String searchguardIndex;
+	private final ConfigIndexState configIndexState;
 	private final RestApiPrivilegesEvaluator restApiPrivilegesEvaluator;
 	protected final Boolean acceptInvalidLicense;
 	protected final AuditLog auditLog;
+	protected final Executor managementExecutor;
+	private volatile ConfigWriteQueue writeQueue;
+	private final ConfigSnapshot snapshot = new ConfigSnapshot();
+
+	/**
+	 * Refresh policy for writes of configuration documents. wait_for answers
+	 * once the change is visible without forcing a refresh of its own.
+	 */
+	private static final RefreshPolicy REFRESH_POLICY = RefreshPolicy.WAIT_UNTIL;
+
+	protected static final String BULK_ENDPOINT = "_bulk";
+
+	protected static final String PATCH_ENDPOINT = "_patch";
+
+	protected static final String MGET_ENDPOINT = "_mget";
+
+	protected static final String IF_MATCH_HEADER = "If-Match";
+
+	protected static final String ETAG_HEADER = "ETag";
+
+	protected static final String IF_NONE_MATCH_HEADER = "If-None-Match";
+
+	/** how often a write is applied again to a concurrently modified document */
+	protected static final int MAX_CONFLICT_RETRIES = 5;
 
 	static {
 		//printLicenseInfo();
@@ -92,18 +136,25 @@ public abstract class AbstractApiAction extends BaseRestHandler {
 	protected AbstractApiAction(final Settings settings, final Path configPath, final RestController controller,
 			final Client client, final AdminDNs adminDNs, final IndexBaseConfigurationRepository cl,
 			final ClusterService cs, final PrincipalExtractor principalExtractor, final PrivilegesEvaluator evaluator,
-			ThreadPool threadPool, AuditLog auditLog) {
+			ThreadPool threadPool, AuditLog auditLog, Executor managementExecutor,
+			final RestApiPrivilegesEvaluator restApiPrivilegesEvaluator, final ConfigIndexState configIndexState) {
 		super(settings);
-		this.searchguardIndex = settings.get(ConfigConstants.SEARCHGUARD_CONFIG_INDEX_NAME,
-				ConfigConstants.SG_DEFAULT_CONFIG_INDEX);
+		this.configIndexState = configIndexState;
+		this.searchguardIndex = configIndexState.getIndex();
 		this.acceptInvalidLicense = settings.getAsBoolean(ConfigConstants.SEARCHGUARD_UNSUPPORTED_RESTAPI_ACCEPT_INVALID_LICENSE, Boolean.FALSE);
 
 		this.cl = cl;
 		this.cs = cs;
 		this.threadPool = threadPool;
-		this.restApiPrivilegesEvaluator = new RestApiPrivilegesEvaluator(settings, adminDNs, evaluator,
-				principalExtractor, configPath, threadPool);
+		this.restApiPrivilegesEvaluator = restApiPrivilegesEvaluator;
 		this.auditLog = auditLog;
+		this.managementExecutor = managementExecutor;
+
+		// getConfigName() returns a constant, drop the snapshot whenever the
+		// configuration is reloaded, e.g. after a change by sgadmin
+		if (cl != null && getConfigName() != null) {
+			cl.subscribeOnChange(getConfigName(), config -> snapshot.invalidate());
+		}
 	}
 
 	protected abstract AbstractConfigurationValidator getValidator(final Method method, BytesReference ref);
@@ -112,123 +163,837 @@ public abstract class AbstractApiAction extends BaseRestHandler {
 
 	protected abstract String getConfigName();
 
-	protected Tuple<String[], RestResponse> handleApiRequest(final RestRequest request, final Client client)
-			throws Throwable {
+	protected void handleApiRequest(final RestChannel channel, final RestRequest request, final Client client)
+			throws IOException {
+
+		// multi get bodies list names only, nothing to validate against the resource schema
+		if (isMgetRequest(request)) {
+			handleMget(channel, request, client);
+			return;
+		}
+
+		// bulk bodies are NDJSON, items are validated one by one
+		if (isBulkRequest(request)) {
+			handleBulk(channel, request, client);
+			return;
+		}
+
+		// JSON patch bodies are arrays of operations, validated after applying
+		if (isPatchRequest(request)) {
+			handlePatch(channel, request, client);
+			return;
+		}
 
 		// validate additional settings, if any
 		AbstractConfigurationValidator validator = getValidator(request.method(), request.content());
 		if (!validator.validateSettings()) {
 			request.params().clear();
-			return new Tuple<String[], RestResponse>(new String[0],
-					new BytesRestResponse(RestStatus.BAD_REQUEST, validator.errorsAsXContent()));
+			channel.sendResponse(new BytesRestResponse(RestStatus.BAD_REQUEST, validator.errorsAsXContent()));
+			return;
 		}
 		switch (request.method()) {
 		case DELETE:
-			return handleDelete(request, client, validator.settingsBuilder());
+			handleDelete(channel, request, client, validator.settingsBuilder());
+			break;
 		case POST:
-			return handlePost(request, client, validator.settingsBuilder());
+			handlePost(channel, request, client, validator.settingsBuilder());
+			break;
 		case PUT:
-			return handlePut(request, client, validator.settingsBuilder());
+			handlePut(channel, request, client, validator.settingsBuilder());
+			break;
 		case GET:
-			return handleGet(request, client, validator.settingsBuilder());
+			handleGet(channel, request, client, validator.settingsBuilder());
+			break;
 		default:
 			throw new IllegalArgumentException(request.method() + " not supported");
 		}
 	}
 
-	protected Tuple<String[], RestResponse> handleDelete(final RestRequest request, final Client client,
-			final Settings.Builder additionalSettingsBuilder) throws Throwable {
+	protected void handleDelete(final RestChannel channel, final RestRequest request, final Client client,
+			final Settings.Builder additionalSettingsBuilder) throws IOException {
 		final String name = request.param("name");
 
 		if (name == null || name.length() == 0) {
-			return badRequestResponse("No " + getResourceName() + " specified");
+			badRequestResponse(channel, "No " + getResourceName() + " specified");
+			return;
 		}
 
-		final Settings existingAsSettings = loadAsSettings(getConfigName());
-		
-		// check if resource is read only
-		Boolean readOnly = existingAsSettings.getAsBoolean(name+ "." + ConfigConstants.CONFIGKEY_READONLY, Boolean.FALSE);
-		if (readOnly) {
-			return forbidden("Resource '"+ name +"' is read-only.");
-		}
-		
-		final Map<String, Object> config = Utils.convertJsonToxToStructuredMap(Settings.builder().put(existingAsSettings).build()); 
+		mutate(channel, request, client, config -> {
 
-		boolean resourceExisted = config.containsKey(name);
-		config.remove(name);
-		if (resourceExisted) {
-			save(client, request, getConfigName(), Utils.convertStructuredMapToBytes(config));
-			return successResponse("'" + name + "' deleted.", getConfigName());
-		} else {
-			return notFound(getResourceName() + " " + name + " not found.");
-		}
+			// check if resource is read only
+			if (isReadOnly(config, name)) {
+				return ConfigMutation.Result.respond(RestStatus.FORBIDDEN, "Resource '"+ name +"' is read-only.");
+			}
+
+			if (config.remove(name) == null) {
+				return ConfigMutation.Result.respond(RestStatus.NOT_FOUND, getResourceName() + " " + name + " not found.");
+			}
+			return ConfigMutation.Result.write(RestStatus.OK, "'" + name + "' deleted.");
+		});
 	}
 
-	protected Tuple<String[], RestResponse> handlePut(final RestRequest request, final Client client,
-			final Settings.Builder additionalSettingsBuilder) throws Throwable {
+	protected void handlePut(final RestChannel channel, final RestRequest request, final Client client,
+			final Settings.Builder additionalSettingsBuilder) throws IOException {
 		
 		final String name = request.param("name");
 
 		if (name == null || name.length() == 0) {
-			return badRequestResponse("No " + getResourceName() + " specified");
+			badRequestResponse(channel, "No " + getResourceName() + " specified");
+			return;
 		}
 
-		final Settings existingAsSettings = loadAsSettings(getConfigName());
-		
-		// check if resource is writeable
-		Boolean readOnly = existingAsSettings.getAsBoolean(name+ "." + ConfigConstants.CONFIGKEY_READONLY, Boolean.FALSE);
-		if (readOnly) {
-			return forbidden("Resource '"+ name +"' is read-only.");
+		if (isReservedName(name)) {
+			badRequestResponse(channel, reservedNameMessage(name));
+			return;
 		}
-		
+
 		if (log.isTraceEnabled()) {
 			log.trace(additionalSettingsBuilder.build());
 		}
-		
-		final Map<String, Object> con = Utils.convertJsonToxToStructuredMap(existingAsSettings); 
-		
-		boolean existed = con.containsKey(name);
 
-		con.put(name, Utils.convertJsonToxToStructuredMap(additionalSettingsBuilder.build()));
-		
-		save(client, request, getConfigName(), Utils.convertStructuredMapToBytes(con));
-		if (existed) {
-			return successResponse("'" + name + "' updated.", getConfigName());
+		final Map<String, Object> resource = Utils.convertJsonToxToStructuredMap(additionalSettingsBuilder.build());
+
+		mutate(channel, request, client, con -> {
+
+			// check if resource is writeable
+			if (isReadOnly(con, name)) {
+				return ConfigMutation.Result.respond(RestStatus.FORBIDDEN, "Resource '"+ name +"' is read-only.");
+			}
+
+			final boolean existed = con.containsKey(name);
+
+			// nothing to write and nothing to propagate if the resource is unchanged
+			if (isUnchanged(con.get(name), resource)) {
+				return ConfigMutation.Result.unchanged("'" + name + "' unchanged.");
+			}
+
+			con.put(name, resource);
+
+			if (existed) {
+				return ConfigMutation.Result.write(RestStatus.OK, "'" + name + "' updated.");
+			} else {
+				return ConfigMutation.Result.write(RestStatus.CREATED, "'" + name + "' created.");
+			}
+		});
+	}
+
+	/**
+	 * Applies the mutation to the configuration as currently stored and writes
+	 * the result with the version that has been read. Mutations arriving while
+	 * a write is in flight are written together by the {@link ConfigWriteQueue}.
+	 * If another write came in between, the mutation is applied again to the
+	 * new document. Clients that send an If-Match header with the version
+	 * (ETag) they have read get a 409 instead.
+	 */
+	protected void mutate(final RestChannel channel, final RestRequest request, final Client client, final ConfigMutation mutation) {
+		final long expectedVersion;
+
+		try {
+			expectedVersion = expectedVersion(request);
+		} catch (final IllegalArgumentException e) {
+			badRequestResponse(channel, e.getMessage());
+			return;
+		}
+
+		mutate(channel, request, client, mutation, expectedVersion);
+	}
+
+	private void mutate(final RestChannel channel, final RestRequest request, final Client client, final ConfigMutation mutation,
+			final long expectedVersion) {
+
+		writeQueue(client).submit(mutation, expectedVersion, new ConfigWriteQueue.Callback() {
+
+			@Override
+			public void onResult(final ConfigMutation.Result result, final long version) {
+				response(channel, result.getStatus(), result.getStatus().name(), result.getMessage(), result.getChanged(), version);
+			}
+
+			@Override
+			public void onFailure(final Exception e) {
+				if (isVersionConflict(e)) {
+					versionConflict(channel, Versions.NOT_FOUND);
+				} else {
+					channel.sendResponse(new BytesRestResponse(ExceptionsHelper.status(e), e.toString()));
+				}
+			}
+		});
+	}
+
+	/**
+	 * The queue all single resource writes of this configuration go through.
+	 * Every configuration is written by exactly one handler, so this is one
+	 * queue per configuration.
+	 */
+	private ConfigWriteQueue writeQueue(final Client client) {
+		ConfigWriteQueue queue = writeQueue;
+		if (queue == null) {
+			synchronized (this) {
+				queue = writeQueue;
+				if (queue == null) {
+					writeQueue = queue = new ConfigWriteQueue(getConfigName(), threadPool, managementExecutor, ConfigWriteQueue.DEFAULT_WINDOW,
+							ConfigWriteQueue.DEFAULT_MAX_OPERATIONS) {
+
+						@Override
+						protected void load(final ActionListener<ConfigDocument> listener) {
+							loadVersioned(client, getConfigName(), listener);
+						}
+
+						@Override
+						protected void write(final BytesReference source, final long version, final ActionListener<IndexResponse> listener) {
+							save(client, null, getConfigName(), source, version, listener);
+						}
+					};
+				}
+			}
+		}
+		return queue;
+	}
+
+	protected void handlePost(final RestChannel channel, final RestRequest request, final Client client,
+			final Settings.Builder additionalSettings) throws IOException {
+		notImplemented(channel, Method.POST);
+	}
+
+	/**
+	 * Applies all operations of a NDJSON bulk body to one copy of the
+	 * configuration. Each item is validated separately; the configuration is
+	 * written and propagated once for all successful items. Per-item results
+	 * are returned in the format of the Elasticsearch bulk API.
+	 */
+	protected void handleBulk(final RestChannel channel, final RestRequest request, final Client client) throws IOException {
+		final long expectedVersion;
+
+		try {
+			expectedVersion = expectedVersion(request);
+		} catch (final IllegalArgumentException e) {
+			badRequestResponse(channel, e.getMessage());
+			return;
+		}
+
+		handleBulk(channel, request, client, expectedVersion, 0);
+	}
+
+	private void handleBulk(final RestChannel channel, final RestRequest request, final Client client, final long expectedVersion,
+			final int attempt) {
+		final long startTime = System.nanoTime();
+		final List<BulkItem> items;
+
+		try {
+			items = BulkItem.parse(request.content());
+		} catch (final ElasticsearchParseException e) {
+			badRequestResponse(channel, e.getMessage());
+			return;
+		}
+
+		if (items.isEmpty()) {
+			badRequestResponse(channel, "Request body required for this action.");
+			return;
+		}
+
+		validateBulkItems(items);
+
+		prepareBulkItems(request, client, items, new OnSucessActionListener<List<BulkItem>>(channel) {
+
+			@Override
+			public void onResponse(final List<BulkItem> preparedItems) {
+				loadVersioned(client, getConfigName(), new OnSucessActionListener<ConfigDocument>(channel) {
+
+					@Override
+					public void onResponse(final ConfigDocument document) {
+						if (!matchesVersion(document, expectedVersion)) {
+							versionConflict(channel, document.getVersion());
+							return;
+						}
+						applyBulkItems(channel, request, client, preparedItems, document, startTime, new ConflictListener(channel, expectedVersion, attempt) {
+
+							@Override
+							protected void retry() {
+								handleBulk(channel, request, client, expectedVersion, attempt + 1);
+							}
+						});
+					}
+				});
+			}
+		});
+	}
+
+	private void validateBulkItems(final List<BulkItem> items) {
+		for (final BulkItem item : items) {
+			if (item.getOpType() == BulkItem.OpType.DELETE) {
+				continue;
+			}
+			if (isReservedName(item.getId())) {
+				item.fail(RestStatus.BAD_REQUEST, reservedNameMessage(item.getId()));
+				continue;
+			}
+			final AbstractConfigurationValidator validator = getValidator(Method.PUT, item.getSource());
+			if (validator.validateSettings()) {
+				item.setSettings(validator.settingsBuilder());
+			} else {
+				item.fail(RestStatus.BAD_REQUEST, validator.errorsAsXContent());
+			}
+		}
+	}
+
+	/**
+	 * Hook to process the validated items before they are applied, e.g. to hash
+	 * passwords. Must notify the listener exactly once.
+	 */
+	protected void prepareBulkItems(final RestRequest request, final Client client, final List<BulkItem> items,
+			final ActionListener<List<BulkItem>> listener) {
+		listener.onResponse(items);
+	}
+
+	/**
+	 * Hook to check or complete an item against the resource it replaces, which
+	 * is null for new resources. Fail the item to skip it.
+	 */
+	protected void prepareBulkItem(final BulkItem item, final Map<String, Object> existingResource) {
+	}
+
+	private void applyBulkItems(final RestChannel channel, final RestRequest request, final Client client,
+			final List<BulkItem> items, final ConfigDocument document, final long startTime, final ConflictListener conflictListener) {
+
+		final Map<String, Object> config = document.copyStructuredMap();
+		boolean changed = false;
+
+		for (final BulkItem item : items) {
+			if (item.isFailed()) {
+				continue;
+			}
+
+			final String name = item.getId();
+
+			if (isReadOnly(document.getStructuredMap(), name)) {
+				item.fail(RestStatus.FORBIDDEN, "Resource '" + name + "' is read-only.");
+				continue;
+			}
+
+			final boolean existed = config.containsKey(name);
+
+			switch (item.getOpType()) {
+			case DELETE:
+				if (!existed) {
+					item.fail(RestStatus.NOT_FOUND, getResourceName() + " " + name + " not found.");
+					continue;
+				}
+				config.remove(name);
+				item.success(RestStatus.OK, "deleted");
+				changed = true;
+				continue;
+			case CREATE:
+				if (existed) {
+					item.fail(RestStatus.CONFLICT, "'" + name + "' already exists.");
+					continue;
+				}
+				break;
+			case UPDATE:
+				if (!existed) {
+					item.fail(RestStatus.NOT_FOUND, getResourceName() + " " + name + " not found.");
+					continue;
+				}
+				break;
+			default:
+				break;
+			}
+
+			@SuppressWarnings("unchecked")
+			final Map<String, Object> existingResource = existed ? (Map<String, Object>) config.get(name) : null;
+			prepareBulkItem(item, existingResource);
+			if (item.isFailed()) {
+				continue;
+			}
+
+			final Map<String, Object> resource = Utils.convertJsonToxToStructuredMap(item.getSettings().build());
+			if (isUnchanged(existingResource, resource)) {
+				item.success(RestStatus.OK, "noop");
+				continue;
+			}
+
+			config.put(name, resource);
+			if (existed) {
+				item.success(RestStatus.OK, "updated");
+			} else {
+				item.success(RestStatus.CREATED, "created");
+			}
+			changed = true;
+		}
+
+		if (!changed) {
+			bulkResponse(channel, items, startTime);
+			return;
+		}
+
+		save(client, request, getConfigName(), Utils.convertStructuredMapToBytes(config), document.getVersion(), new ActionListener<IndexResponse>() {
+
+			@Override
+			public void onResponse(IndexResponse response) {
+				bulkResponse(channel, items, startTime);
+			}
+
+			@Override
+			public void onFailure(Exception e) {
+				conflictListener.onFailure(e);
+			}
+		});
+	}
+
+	private void bulkResponse(final RestChannel channel, final List<BulkItem> items, final long startTime) {
+		try {
+			boolean errors = false;
+			for (final BulkItem item : items) {
+				errors |= item.isFailed();
+			}
+
+			final XContentBuilder builder = channel.newBuilder();
+			builder.startObject();
+			builder.field("took", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+			builder.field("errors", errors);
+			builder.startArray("items");
+			for (final BulkItem item : items) {
+				item.toXContent(builder);
+			}
+			builder.endArray();
+			builder.endObject();
+			channel.sendResponse(new BytesRestResponse(RestStatus.OK, builder));
+		} catch (IOException ex) {
+			logger.error("Cannot build response", ex);
+			channel.sendResponse(new BytesRestResponse(RestStatus.INTERNAL_SERVER_ERROR, ex.toString()));
+		}
+	}
+
+	/**
+	 * Applies a JSON patch (RFC 6902) to a single resource, or to the whole
+	 * configuration if no name is given. In the latter case the first path
+	 * segment of every operation is the name of a resource. The patch is applied
+	 * to the structured configuration, then every resource it touched is
+	 * validated and prepared like a bulk item. Nothing is written unless all of
+	 * them are valid.
+	 */
+	protected void handlePatch(final RestChannel channel, final RestRequest request, final Client client) throws IOException {
+		final long expectedVersion;
+
+		try {
+			expectedVersion = expectedVersion(request);
+		} catch (final IllegalArgumentException e) {
+			badRequestResponse(channel, e.getMessage());
+			return;
+		}
+
+		handlePatch(channel, request, client, expectedVersion, 0);
+	}
+
+	private void handlePatch(final RestChannel channel, final RestRequest request, final Client client, final long expectedVersion,
+			final int attempt) {
+		final JsonPatch patch;
+
+		try {
+			patch = JsonPatch.parse(request.content());
+		} catch (final ElasticsearchParseException e) {
+			badRequestResponse(channel, e.getMessage());
+			return;
+		}
+
+		loadVersioned(client, getConfigName(), new OnSucessActionListener<ConfigDocument>(channel) {
+
+			@Override
+			public void onResponse(final ConfigDocument document) {
+				if (!matchesVersion(document, expectedVersion)) {
+					versionConflict(channel, document.getVersion());
+					return;
+				}
+				applyPatch(channel, request, client, patch, document, new ConflictListener(channel, expectedVersion, attempt) {
+
+					@Override
+					protected void retry() {
+						handlePatch(channel, request, client, expectedVersion, attempt + 1);
+					}
+				});
+			}
+		});
+	}
+
+	private void applyPatch(final RestChannel channel, final RestRequest request, final Client client, final JsonPatch patch,
+			final ConfigDocument document, final ConflictListener conflictListener) {
+		final String name = request.param("name");
+		final Map<String, Object> config = document.copyStructuredMap();
+		final Set<String> touched = new LinkedHashSet<>();
+
+		if (name != null && name.length() > 0) {
+			if (!config.containsKey(name)) {
+				notFound(channel, "Resource '" + name + "' not found.");
+				return;
+			}
+			touched.add(name);
 		} else {
-			return createdResponse("'" + name + "' created.", getConfigName());
+			if (patch.hasRootOperation()) {
+				badRequestResponse(channel, "Paths must start with the name of a " + getResourceName() + ".");
+				return;
+			}
+			touched.addAll(patch.topLevelKeys());
+		}
+
+		final Map<String, Object> originals = new HashMap<>();
+		for (final String resource : touched) {
+			if (isReadOnly(document.getStructuredMap(), resource)) {
+				forbidden(channel, "Resource '" + resource + "' is read-only.");
+				return;
+			}
+			if (config.containsKey(resource)) {
+				originals.put(resource, JsonPatch.deepCopy(config.get(resource)));
+			}
+		}
+
+		try {
+			if (name != null && name.length() > 0) {
+				config.put(name, patch.apply(config.get(name)));
+			} else {
+				patch.apply(config);
+			}
+		} catch (final JsonPatchException e) {
+			if (e.isTestFailed()) {
+				response(channel, RestStatus.CONFLICT, RestStatus.CONFLICT.name(), e.getMessage());
+			} else {
+				badRequestResponse(channel, e.getMessage());
+			}
+			return;
+		}
+
+		final List<BulkItem> items = new ArrayList<>(touched.size());
+		for (final String resource : touched) {
+			final Object patched = config.get(resource);
+			if (patched == null) {
+				if (originals.containsKey(resource)) {
+					items.add(new BulkItem(BulkItem.OpType.DELETE, resource, null));
+				}
+			} else if (patched instanceof Map) {
+				@SuppressWarnings("unchecked")
+				final BytesReference source = Utils.convertStructuredMapToBytes((Map<String, Object>) patched);
+				items.add(new BulkItem(BulkItem.OpType.INDEX, resource, source));
+			} else {
+				badRequestResponse(channel, "Resource '" + resource + "' must be an object.");
+				return;
+			}
+		}
+
+		validateBulkItems(items);
+		if (sendFirstFailure(channel, items)) {
+			return;
+		}
+
+		prepareBulkItems(request, client, items, new OnSucessActionListener<List<BulkItem>>(channel) {
+
+			@Override
+			public void onResponse(final List<BulkItem> preparedItems) {
+				for (final BulkItem item : preparedItems) {
+					if (item.getOpType() == BulkItem.OpType.DELETE) {
+						continue;
+					}
+					@SuppressWarnings("unchecked")
+					final Map<String, Object> original = (Map<String, Object>) originals.get(item.getId());
+					prepareBulkItem(item, original);
+					if (item.isFailed()) {
+						break;
+					}
+					config.put(item.getId(), Utils.convertJsonToxToStructuredMap(item.getSettings().build()));
+				}
+
+				if (sendFirstFailure(channel, preparedItems)) {
+					return;
+				}
+
+				boolean changed = false;
+				for (final String resource : touched) {
+					changed |= !Objects.equals(originals.get(resource), config.get(resource));
+				}
+
+				if (!changed) {
+					unchangedResponse(channel, name != null && name.length() > 0 ? "'" + name + "' unchanged." : "Resource unchanged.");
+					return;
+				}
+
+				save(client, request, getConfigName(), Utils.convertStructuredMapToBytes(config), document.getVersion(), new ActionListener<IndexResponse>() {
+
+					@Override
+					public void onResponse(IndexResponse response) {
+						final String message = name != null && name.length() > 0 ? "'" + name + "' updated." : "Resource updated.";
+						response(channel, RestStatus.OK, RestStatus.OK.name(), message, null, response.getVersion());
+					}
+
+					@Override
+					public void onFailure(Exception e) {
+						conflictListener.onFailure(e);
+					}
+				});
+			}
+		});
+	}
+
+	/** true if the resource is marked as read-only in the structured configuration */
+	protected static boolean isReadOnly(final Map<String, Object> config, final String name) {
+		final Object resource = config.get(name);
+		return resource instanceof Map && Boolean.parseBoolean(String.valueOf(((Map<?, ?>) resource).get(ConfigConstants.CONFIGKEY_READONLY)));
+	}
+
+	/**
+	 * true if the existing resource is structurally equal to the new one. Both
+	 * sides are converted from Settings, so values are compared in the same
+	 * normalized form.
+	 */
+	protected static boolean isUnchanged(final Object existingResource, final Object newResource) {
+		return existingResource != null && existingResource.equals(newResource);
+	}
+
+	private boolean sendFirstFailure(final RestChannel channel, final List<BulkItem> items) {
+		for (final BulkItem item : items) {
+			if (item.isFailed()) {
+				channel.sendResponse(new BytesRestResponse(item.getStatus(), XContentType.JSON.mediaType(), item.getError()));
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Answers failed writes of bulk and patch requests. On a version conflict
+	 * the whole request is processed again, unless the client asked for a
+	 * specific version.
+	 */
+	private abstract class ConflictListener {
+
+		private final RestChannel channel;
+		private final long expectedVersion;
+		private final int attempt;
+
+		ConflictListener(final RestChannel channel, final long expectedVersion, final int attempt) {
+			this.channel = channel;
+			this.expectedVersion = expectedVersion;
+			this.attempt = attempt;
+		}
+
+		protected abstract void retry();
+
+		void onFailure(final Exception e) {
+			if (isVersionConflict(e) && expectedVersion == Versions.MATCH_ANY && attempt < MAX_CONFLICT_RETRIES) {
+				if (log.isDebugEnabled()) {
+					log.debug("{} has been modified concurrently, processing request again", getConfigName());
+				}
+				retry();
+			} else if (isVersionConflict(e)) {
+				versionConflict(channel, Versions.NOT_FOUND);
+			} else {
+				channel.sendResponse(new BytesRestResponse(ExceptionsHelper.status(e), e.toString()));
+			}
 		}
 	}
 
-	protected Tuple<String[], RestResponse> handlePost(final RestRequest request, final Client client,
-			final Settings.Builder additionalSettings) throws Throwable {
-		return notImplemented(Method.POST);
+	/**
+	 * The version a client expects the configuration to have, read from the
+	 * If-Match header. Returns {@link Versions#MATCH_ANY} if the header is
+	 * missing or a wildcard.
+	 *
+	 * @throws IllegalArgumentException if the header is not a version
+	 */
+	protected static long expectedVersion(final RestRequest request) {
+		final String ifMatch = request.header(IF_MATCH_HEADER);
+
+		if (ifMatch == null || ifMatch.trim().equals("*")) {
+			return Versions.MATCH_ANY;
+		}
+
+		String version = ifMatch.trim();
+		if (version.startsWith("W/")) {
+			version = version.substring(2);
+		}
+		if (version.length() > 1 && version.startsWith("\"") && version.endsWith("\"")) {
+			version = version.substring(1, version.length() - 1);
+		}
+
+		try {
+			return Long.parseLong(version);
+		} catch (final NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid " + IF_MATCH_HEADER + " header '" + ifMatch + "', expected a version.");
+		}
 	}
 
-	protected Tuple<String[], RestResponse> handleGet(RestRequest request, Client client, Builder additionalSettings)
-			throws Throwable {
+	private static boolean matchesVersion(final ConfigDocument document, final long expectedVersion) {
+		return expectedVersion == Versions.MATCH_ANY || document.getVersion() == expectedVersion;
+	}
+
+	private static boolean isVersionConflict(final Exception e) {
+		return ExceptionsHelper.unwrapCause(e) instanceof VersionConflictEngineException;
+	}
+
+	private void versionConflict(final RestChannel channel, final long currentVersion) {
+		response(channel, RestStatus.CONFLICT, RestStatus.CONFLICT.name(),
+				getConfigName() + " has been modified concurrently, reload and try again.", null, currentVersion);
+	}
+
+	protected static String toETag(final long version) {
+		return "\"" + version + "\"";
+	}
+
+	protected void handleGet(final RestChannel channel, RestRequest request, Client client, Builder additionalSettings)
+			throws IOException {
 
 		final String resourcename = request.param("name");
 
-		final Settings configurationSettings = loadAsSettings(getConfigName());
+		final ResourceQuery query;
+		try {
+			query = (resourcename == null || resourcename.length() == 0) && ResourceQuery.isRequested(request)
+					? ResourceQuery.parse(request, supportsRoleFilter()) : null;
+		} catch (final IllegalArgumentException e) {
+			badRequestResponse(channel, e.getMessage());
+			return;
+		}
+
+		// read the document itself so that the ETag matches the content
+		loadVersioned(client, getConfigName(), new OnSucessActionListener<ConfigDocument>(channel) {
+
+			@Override
+			public void onResponse(final ConfigDocument document) {
+				final BytesRestResponse response;
+				try {
+					if (query != null) {
+						response = isNotModified(request, document) ? notModifiedResponse() : query.response(channel, document);
+					} else {
+						response = getResponse(resourcename, document, isNotModified(request, document));
+					}
+				} catch (final Exception e) {
+					onFailure(e);
+					return;
+				}
+				if (response == null) {
+					notFound(channel, "Resource '" + resourcename + "' not found.");
+					return;
+				}
+				if (document.exists()) {
+					response.addHeader(ETAG_HEADER, toETag(document.getVersion()));
+				}
+				channel.sendResponse(response);
+			}
+		});
+	}
+
+	/**
+	 * Returns several resources at once, body {@code {"names": [...]}}. The
+	 * found resources are returned by name, the others are listed under
+	 * not_found. Access is checked and the configuration is looked up once
+	 * for all names.
+	 */
+	protected void handleMget(final RestChannel channel, final RestRequest request, final Client client) throws IOException {
+		final Set<String> names = new LinkedHashSet<>();
+
+		try {
+			if (!request.hasContent()) {
+				throw new IllegalArgumentException("Request body required");
+			}
+			final Object list = XContentHelper.convertToMap(request.content(), false, XContentType.JSON).v2().get("names");
+			if (!(list instanceof List)) {
+				throw new IllegalArgumentException("names must be an array");
+			}
+			for (final Object name : (List<?>) list) {
+				if (!(name instanceof String) || ((String) name).isEmpty()) {
+					throw new IllegalArgumentException("names must only contain non-empty strings");
+				}
+				names.add((String) name);
+			}
+		} catch (final ElasticsearchParseException | IllegalArgumentException e) {
+			badRequestResponse(channel, e.getMessage());
+			return;
+		}
+
+		loadVersioned(client, getConfigName(), new OnSucessActionListener<ConfigDocument>(channel) {
+
+			@Override
+			public void onResponse(final ConfigDocument document) {
+				final Map<String, Object> config = document.getStructuredMap();
+
+				try {
+					final XContentBuilder builder = XContentFactory.jsonBuilder();
+					builder.startObject();
+					builder.startObject("resources");
+					final List<String> notFound = new ArrayList<>();
+					for (final String name : names) {
+						final Object resource = config.get(name);
+						if (resource == null) {
+							notFound.add(name);
+						} else {
+							builder.field(name, resource);
+						}
+					}
+					builder.endObject();
+					builder.field("not_found", notFound);
+					builder.endObject();
+
+					final BytesRestResponse response = new BytesRestResponse(RestStatus.OK, builder);
+					if (document.exists()) {
+						response.addHeader(ETAG_HEADER, toETag(document.getVersion()));
+					}
+					channel.sendResponse(response);
+				} catch (final IOException e) {
+					onFailure(e);
+				}
+			}
+		});
+	}
+
+	/**
+	 * The complete configuration or the requested resource, null if it does
+	 * not exist. The serialized content is kept with the document, so
+	 * repeated reads of an unchanged configuration are not serialized again.
+	 */
+	private BytesRestResponse getResponse(final String resourcename, final ConfigDocument document, final boolean notModified) {
 
 		// no specific resource requested, return complete config
 		if (resourcename == null || resourcename.length() == 0) {
-			return new Tuple<String[], RestResponse>(new String[0],
-					new BytesRestResponse(RestStatus.OK, convertToJson(configurationSettings)));
+			if (notModified) {
+				return notModifiedResponse();
+			}
+			return new BytesRestResponse(RestStatus.OK, XContentType.JSON.mediaType(),
+					document.serialized(ConfigDocument.ALL, name -> convertToJson(document.getSettings()).bytes()));
 		}
 
-		final Map<String, Object> con = 
-		        new HashMap<>(Utils.convertJsonToxToStructuredMap(Settings.builder().put(configurationSettings).build()))
-		        .entrySet()
-		        .stream()
-		        .filter(f->f.getKey() != null && f.getKey().equals(resourcename)) //copy keys
-		        .collect(Collectors.toMap(p -> p.getKey(), p -> p.getValue()));
+		final Object resource = document.getStructuredMap().get(resourcename);
 
-		if (!con.containsKey(resourcename)) {
-			return notFound("Resource '" + resourcename + "' not found.");
+		if (resource == null) {
+			return null;
 		}
-		return new Tuple<String[], RestResponse>(new String[0],
-				new BytesRestResponse(RestStatus.OK, XContentHelper.convertToJson(Utils.convertStructuredMapToBytes(con), false, false, XContentType.JSON)));
+		if (notModified) {
+			return notModifiedResponse();
+		}
+		return new BytesRestResponse(RestStatus.OK, BytesRestResponse.TEXT_CONTENT_TYPE, document.serialized(resourcename, name -> {
+			final Map<String, Object> con = Collections.singletonMap(name, resource);
+			return new BytesArray(XContentHelper.convertToJson(Utils.convertStructuredMapToBytes(con), false, false, XContentType.JSON));
+		}));
+	}
+
+	private static BytesRestResponse notModifiedResponse() {
+		return new BytesRestResponse(RestStatus.NOT_MODIFIED, BytesRestResponse.TEXT_CONTENT_TYPE, BytesArray.EMPTY);
+	}
+
+	/**
+	 * true if the If-None-Match header of the request names the version of
+	 * the document, so the client already has the current content
+	 */
+	protected static boolean isNotModified(final RestRequest request, final ConfigDocument document) {
+		final String ifNoneMatch = request.header(IF_NONE_MATCH_HEADER);
+
+		if (ifNoneMatch == null || !document.exists()) {
+			return false;
+		}
+
+		final String etag = toETag(document.getVersion());
+		for (String tag : ifNoneMatch.split(",")) {
+			tag = tag.trim();
+			if (tag.startsWith("W/")) {
+				tag = tag.substring(2);
+			}
+			if (tag.equals("*") || tag.equals(etag)) {
+				return true;
+			}
+		}
+		return false;
 	}
 
 
@@ -240,61 +1005,203 @@ public abstract class AbstractApiAction extends BaseRestHandler {
 		return cl.getConfiguration(config);
 	}
 
-	protected boolean ensureIndexExists(final Client client) {
-		if (!cs.state().metaData().hasConcreteIndex(this.searchguardIndex)) {
-			return false;
+	/**
+	 * Reads the configuration document directly from the index, together with
+	 * its version. Unlike {@link #loadAsSettings(String)} this reflects writes
+	 * that have not been propagated to the nodes yet. The document of the
+	 * configuration of this handler is kept in memory until it is written or
+	 * reloaded.
+	 */
+	protected void loadVersioned(final Client client, final String config, final ActionListener<ConfigDocument> listener) {
+		final boolean ownConfig = config.equals(getConfigName());
+
+		if (ownConfig) {
+			final ConfigDocument document = snapshot.get();
+			if (document != null) {
+				listener.onResponse(document);
+				return;
+			}
 		}
-		return true;
+
+		final long generation = snapshot.generation();
+		final GetRequest gr = new GetRequest(this.searchguardIndex, configType(config), configId(config)).realtime(true);
+
+		client.get(gr, new ActionListener<GetResponse>() {
+
+			@Override
+			public void onResponse(final GetResponse response) {
+				final ConfigDocument document;
+				try {
+					document = ConfigDocument.fromGetResponse(config, response);
+				} catch (final Exception e) {
+					listener.onFailure(e);
+					return;
+				}
+				if (ownConfig) {
+					snapshot.put(document, generation);
+				}
+				listener.onResponse(document);
+			}
+
+			@Override
+			public void onFailure(final Exception e) {
+				listener.onFailure(e);
+			}
+		});
+	}
+
+	/**
+	 * Reads the current versions of the given configuration documents with a
+	 * single realtime multi get that does not fetch the sources. Missing
+	 * documents have the version {@link Versions#NOT_FOUND}.
+	 */
+	protected void loadVersions(final Client client, final Collection<String> configs, final ActionListener<Map<String, Long>> listener) {
+		final MultiGetRequest mgr = new MultiGetRequest().realtime(true);
+		for (final String config : configs) {
+			mgr.add(new MultiGetRequest.Item(this.searchguardIndex, configType(config), configId(config))
+					.fetchSourceContext(FetchSourceContext.DO_NOT_FETCH_SOURCE));
+		}
+
+		client.multiGet(mgr, new ActionListener<MultiGetResponse>() {
+
+			@Override
+			public void onResponse(final MultiGetResponse response) {
+				final Map<String, Long> versions = new LinkedHashMap<>();
+				final Iterator<String> names = configs.iterator();
+				for (final MultiGetItemResponse item : response) {
+					if (item.isFailed()) {
+						listener.onFailure(item.getFailure().getFailure());
+						return;
+					}
+					final GetResponse get = item.getResponse();
+					versions.put(names.next(), get.isExists() ? get.getVersion() : Versions.NOT_FOUND);
+				}
+				listener.onResponse(versions);
+			}
+
+			@Override
+			public void onFailure(final Exception e) {
+				listener.onFailure(e);
+			}
+		});
+	}
+
+	protected boolean ensureIndexExists(final Client client) {
+		return configIndexState.indexExists();
 	}
 	
 	protected void save(final Client client, final RestRequest request, final String config,
-            final Settings.Builder settings) throws Throwable {
-	    save(client, request, config, toSource(settings));
+            final Settings.Builder settings, final ActionListener<IndexResponse> actionListener) throws IOException {
+	    save(client, request, config, toSource(settings), actionListener);
 	}
 
+	/**
+	 * Writes the configuration document and, once the write has been
+	 * acknowledged, reloads the configuration on all nodes. With the wait_for
+	 * refresh policy the write is only acknowledged once it is visible, so the
+	 * reload always reads the new document. The listener is
+	 * notified after both steps completed, so callers can answer the REST
+	 * channel from there without blocking the calling thread.
+	 */
 	protected void save(final Client client, final RestRequest request, final String config,
-			final BytesReference bytesRef) throws Throwable {
-		final Semaphore sem = new Semaphore(0);
-		final List<Throwable> exception = new ArrayList<Throwable>(1);
-		final IndexRequest ir = new IndexRequest(this.searchguardIndex);
-
-		String type = "sg";
-		String id = config;
+			final BytesReference bytesRef, final ActionListener<IndexResponse> actionListener) {
+		save(client, request, config, bytesRef, Versions.MATCH_ANY, actionListener);
+	}
 
-		if (cs.state().metaData().index(this.searchguardIndex).mapping("config") != null) {
-			type = config;
-			id = "0";
-		}
+	/**
+	 * Same as {@link #save(Client, RestRequest, String, BytesReference, ActionListener)},
+	 * but fails with a version conflict if the document does not have the given
+	 * version any more
+	 */
+	protected void save(final Client client, final RestRequest request, final String config,
+			final BytesReference bytesRef, final long version, final ActionListener<IndexResponse> actionListener) {
+		final IndexRequest ir = new IndexRequest(this.searchguardIndex);
 
-		client.index(ir.type(type).id(id).setRefreshPolicy(RefreshPolicy.IMMEDIATE).source(config, bytesRef),
+		client.index(ir.type(configType(config)).id(configId(config)).version(version).setRefreshPolicy(REFRESH_POLICY).source(config, bytesRef),
 				new ActionListener<IndexResponse>() {
 
 					@Override
 					public void onResponse(final IndexResponse response) {
-						sem.release();
 						if (logger.isDebugEnabled()) {
 							logger.debug("{} successfully updated", config);
 						}
+						updateConfigs(client, response, invalidateSnapshot(config, actionListener), config);
 					}
 
 					@Override
 					public void onFailure(final Exception e) {
-						sem.release();
-						exception.add(e);
-						logger.error("Cannot update {} due to", config, e);
+						// the document may have been changed by someone else
+						if (config.equals(getConfigName())) {
+							snapshot.invalidate();
+						}
+						if (isVersionConflict(e)) {
+							// expected with concurrent writers, handled by the caller
+							logger.debug("Cannot update {} due to a version conflict", config);
+						} else {
+							logger.error("Cannot update {} due to", config, e);
+						}
+						actionListener.onFailure(e);
 					}
 				});
+	}
 
-		if (!sem.tryAcquire(2, TimeUnit.MINUTES)) {
-			// timeout
-			logger.error("Cannot update {} due to timeout}", config);
-			throw new ElasticsearchException("Timeout updating " + config);
+	/** wraps the listener so that the snapshot of the written configuration is dropped before it is notified */
+	private <T> ActionListener<T> invalidateSnapshot(final String config, final ActionListener<T> listener) {
+		if (!config.equals(getConfigName())) {
+			return listener;
 		}
+		return new ActionListener<T>() {
 
-		if (exception.size() > 0) {
-			throw exception.get(0);
-		}
+			@Override
+			public void onResponse(final T response) {
+				snapshot.invalidate();
+				listener.onResponse(response);
+			}
+
+			@Override
+			public void onFailure(final Exception e) {
+				snapshot.invalidate();
+				listener.onFailure(e);
+			}
+		};
+	}
 
+	private String configType(final String config) {
+		return configIndexState.type(config);
+	}
+
+	private String configId(final String config) {
+		return configIndexState.id(config);
+	}
+
+	private <T> void updateConfigs(final Client client, final T result, final ActionListener<T> actionListener, final String... configs) {
+
+		final ConfigUpdateRequest cur = new ConfigUpdateRequest(configs);
+		// cur.putInContext(ConfigConstants.SG_USER,
+		// new User((String)
+		// request.getFromContext(ConfigConstants.SG_SSL_PRINCIPAL)));
+
+		client.execute(ConfigUpdateAction.INSTANCE, cur, new ActionListener<ConfigUpdateResponse>() {
+
+			@Override
+			public void onFailure(final Exception e) {
+				logger.error("Cannot update {} due to", Arrays.toString(configs), e);
+				actionListener.onFailure(e);
+			}
+
+			@Override
+			public void onResponse(final ConfigUpdateResponse ur) {
+				if (!checkConfigUpdateResponse(ur)) {
+					logger.error("Cannot update {}", Arrays.toString(configs));
+					actionListener.onFailure(new ElasticsearchException("Unable to update " + Arrays.toString(configs)));
+					return;
+				}
+				if (logger.isDebugEnabled()) {
+					logger.debug("Configs {} successfully updated", Arrays.toString(configs));
+				}
+				actionListener.onResponse(result);
+			}
+		});
 	}
 
 	@Override
@@ -312,7 +1219,7 @@ public abstract class AbstractApiAction extends BaseRestHandler {
 		}
 
 		// check if request is authorized
-		String authError = restApiPrivilegesEvaluator.checkAccessPermissions(request, getEndpoint());
+		final String authError = checkAccessPermissions(request);
 
 		if (authError != null) {
 			logger.error("No permission to access REST API: " + authError);
@@ -320,79 +1227,85 @@ public abstract class AbstractApiAction extends BaseRestHandler {
 			auditLog.logMissingPrivileges(authError, user==null?null:user.getName(), request);
 			// for rest request
 			request.params().clear();
-			final BytesRestResponse response = (BytesRestResponse)forbidden("No permission to access REST API: " + authError).v2();
-			return channel -> channel.sendResponse(response);
+			return channel -> forbidden(channel, "No permission to access REST API: " + authError);
 		}
 
-		final Semaphore sem = new Semaphore(0);
-		final List<Throwable> exception = new ArrayList<Throwable>(1);
-		final Tuple<String[], RestResponse> response;
+		// the request is handled on the bounded management executor so that loading,
+		// validating and converting the configuration does not block the
+		// network threads. If its queue is full we answer with 429.
+		return channel -> managementExecutor.execute(new AbstractRunnable() {
 
-		try (StoredContext ctx = threadPool.getThreadContext().stashContext()) {
+			@Override
+			protected void doRun() throws Exception {
+				try (StoredContext ctx = threadPool.getThreadContext().stashContext()) {
 
-			threadPool.getThreadContext().putHeader(ConfigConstants.SG_CONF_REQUEST_HEADER, "true");
+					threadPool.getThreadContext().putHeader(ConfigConstants.SG_CONF_REQUEST_HEADER, "true");
 
-			response = handleApiRequest(request, client);
+					// all stages answer the channel themselves, either directly or
+					// from the callback of the last asynchronous step
+					handleApiRequest(channel, request, client);
+				}
+			}
 
-			// reload config
-			if (response.v1().length > 0) {
+			@Override
+			public void onFailure(final Exception e) {
+				logger.error("Unexpected exception {}", e.toString(), e);
+				request.params().clear();
+				channel.sendResponse(new BytesRestResponse(RestStatus.INTERNAL_SERVER_ERROR, e.toString()));
+			}
 
-				final ConfigUpdateRequest cur = new ConfigUpdateRequest(response.v1());
-				// cur.putInContext(ConfigConstants.SG_USER,
-				// new User((String)
-				// request.getFromContext(ConfigConstants.SG_SSL_PRINCIPAL)));
+			@Override
+			public void onRejection(final Exception e) {
+				logger.warn("Management request rejected: {}", e.toString());
+				request.params().clear();
+				channel.sendResponse(new BytesRestResponse(RestStatus.TOO_MANY_REQUESTS, e.toString()));
+			}
+		});
+	}
 
-				client.execute(ConfigUpdateAction.INSTANCE, cur, new ActionListener<ConfigUpdateResponse>() {
+	private String checkAccessPermissions(final RestRequest request) throws IOException {
 
-					@Override
-					public void onFailure(final Exception e) {
-						sem.release();
-						logger.error("Cannot update {} due to", Arrays.toString(response.v1()), e);
-						exception.add(e);
-					}
+		// multi get only reads, it requires the permissions for GET instead of POST
+		if (isMgetRequest(request)) {
+			return restApiPrivilegesEvaluator.checkAccessPermissions(request, getEndpoint(), Method.GET);
+		}
 
-					@Override
-					public void onResponse(final ConfigUpdateResponse ur) {
-						sem.release();
-						if (!checkConfigUpdateResponse(ur)) {
-							logger.error("Cannot update {}", Arrays.toString(response.v1()));
-							exception.add(
-									new ElasticsearchException("Unable to update " + Arrays.toString(response.v1())));
-						} else if (logger.isDebugEnabled()) {
-							logger.debug("Configs {} successfully updated", Arrays.toString(response.v1()));
-						}
-					}
-				});
+		String authError = restApiPrivilegesEvaluator.checkAccessPermissions(request, getEndpoint());
 
-			} else {
-				sem.release();
+		// bulk and patch requests create, update and delete resources, so they
+		// require the permissions for PUT and DELETE as well
+		if (authError == null && (isBulkRequest(request) || isPatchRequest(request))) {
+			authError = restApiPrivilegesEvaluator.checkAccessPermissions(request, getEndpoint(), Method.PUT);
+			if (authError == null) {
+				authError = restApiPrivilegesEvaluator.checkAccessPermissions(request, getEndpoint(), Method.DELETE);
 			}
-
-		} catch (final Throwable e) {
-			logger.error("Unexpected exception {}", e.toString(), e);
-			request.params().clear();
-			return channel -> channel
-					.sendResponse(new BytesRestResponse(RestStatus.INTERNAL_SERVER_ERROR, e.toString()));
 		}
+		return authError;
+	}
 
-		try {
-			if (!sem.tryAcquire(2, TimeUnit.MINUTES)) {
-				// timeout
-				logger.error("Cannot update {} due to timeout", Arrays.toString(response.v1()));
-				throw new ElasticsearchException("Timeout updating " + Arrays.toString(response.v1()));
-			}
-		} catch (final InterruptedException e) {
-			Thread.currentThread().interrupt();
-		}
+	/**
+	 * Names starting with an underscore are reserved for the endpoints of a
+	 * collection like _bulk, _patch and _mget, resources cannot be written
+	 * with such a name. Existing ones can still be read and deleted.
+	 */
+	protected static boolean isReservedName(final String name) {
+		return name.startsWith("_");
+	}
 
-		if (exception.size() > 0) {
-			request.params().clear();
-			return channel -> channel
-					.sendResponse(new BytesRestResponse(RestStatus.INTERNAL_SERVER_ERROR, exception.get(0).toString()));
-		}
+	protected String reservedNameMessage(final String name) {
+		return "Invalid " + getResourceName() + " name '" + name + "', names starting with '_' are reserved.";
+	}
 
-		return channel -> channel.sendResponse(response.v2());
+	protected static boolean isBulkRequest(final RestRequest request) {
+		return request.method() == Method.POST && request.path().endsWith("/" + BULK_ENDPOINT);
+	}
+
+	protected static boolean isMgetRequest(final RestRequest request) {
+		return request.method() == Method.POST && request.path().endsWith("/" + MGET_ENDPOINT);
+	}
 
+	protected static boolean isPatchRequest(final RestRequest request) {
+		return request.method() == Method.POST && request.path().endsWith("/" + PATCH_ENDPOINT);
 	}
 
 	protected static BytesReference toSource(final Settings.Builder settingsBuilder) throws IOException {
@@ -439,56 +1352,96 @@ public abstract class AbstractApiAction extends BaseRestHandler {
 		return builder;
 	}
 
-	protected Tuple<String[], RestResponse> response(RestStatus status, String statusString, String message,
-			String... configs) {
+	protected void response(RestChannel channel, RestStatus status, String statusString, String message) {
+		response(channel, status, statusString, message, null);
+	}
+
+	protected void response(RestChannel channel, RestStatus status, String statusString, String message, Boolean changed) {
+		response(channel, status, statusString, message, changed, Versions.NOT_FOUND);
+	}
+
+	/** same as the other variants, adds the version of the configuration as ETag if known */
+	protected void response(RestChannel channel, RestStatus status, String statusString, String message, Boolean changed, long version) {
 
 		try {
 			final XContentBuilder builder = XContentFactory.jsonBuilder();
 			builder.startObject();
 			builder.field("status", statusString);
 			builder.field("message", message);
+			if (changed != null) {
+				builder.field("changed", changed.booleanValue());
+			}
 			builder.endObject();
-			String[] configsToUpdate = configs == null ? new String[0] : configs;
-			return new Tuple<String[], RestResponse>(configsToUpdate, new BytesRestResponse(status, builder));
+			final BytesRestResponse response = new BytesRestResponse(status, builder);
+			if (version >= 0) {
+				response.addHeader(ETAG_HEADER, toETag(version));
+			}
+			channel.sendResponse(response);
 		} catch (IOException ex) {
 			logger.error("Cannot build response", ex);
-			return null;
+			channel.sendResponse(new BytesRestResponse(RestStatus.INTERNAL_SERVER_ERROR, ex.toString()));
 		}
 	}
 
-	protected Tuple<String[], RestResponse> successResponse(String message, String... configs) {
-		return response(RestStatus.OK, RestStatus.OK.name(), message, configs);
+	protected void successResponse(RestChannel channel, String message) {
+		response(channel, RestStatus.OK, RestStatus.OK.name(), message);
+	}
+
+	/** answer a write that did not change anything, nothing has been saved */
+	protected void unchangedResponse(RestChannel channel, String message) {
+		response(channel, RestStatus.OK, RestStatus.OK.name(), message, Boolean.FALSE);
 	}
 
-	protected Tuple<String[], RestResponse> createdResponse(String message, String... configs) {
-		return response(RestStatus.CREATED, RestStatus.CREATED.name(), message, configs);
+	protected void createdResponse(RestChannel channel, String message) {
+		response(channel, RestStatus.CREATED, RestStatus.CREATED.name(), message);
 	}
 
-	protected Tuple<String[], RestResponse> badRequestResponse(String message) {
-		return response(RestStatus.BAD_REQUEST, RestStatus.BAD_REQUEST.name(), message);
+	protected void badRequestResponse(RestChannel channel, String message) {
+		response(channel, RestStatus.BAD_REQUEST, RestStatus.BAD_REQUEST.name(), message);
 	}
 
-	protected Tuple<String[], RestResponse> notFound(String message) {
-		return response(RestStatus.NOT_FOUND, RestStatus.NOT_FOUND.name(), message);
+	protected void notFound(RestChannel channel, String message) {
+		response(channel, RestStatus.NOT_FOUND, RestStatus.NOT_FOUND.name(), message);
 	}
 
-	protected Tuple<String[], RestResponse> forbidden(String message) {
-		return response(RestStatus.FORBIDDEN, RestStatus.FORBIDDEN.name(), message);
+	protected void forbidden(RestChannel channel, String message) {
+		response(channel, RestStatus.FORBIDDEN, RestStatus.FORBIDDEN.name(), message);
 	}
 
-	protected Tuple<String[], RestResponse> internalErrorResponse(String message) {
-		return response(RestStatus.INTERNAL_SERVER_ERROR, RestStatus.INTERNAL_SERVER_ERROR.name(), message);
+	protected void internalErrorResponse(RestChannel channel, String message) {
+		response(channel, RestStatus.INTERNAL_SERVER_ERROR, RestStatus.INTERNAL_SERVER_ERROR.name(), message);
 	}
 
-	protected Tuple<String[], RestResponse> unprocessable(String message) {
-		return response(RestStatus.UNPROCESSABLE_ENTITY, RestStatus.UNPROCESSABLE_ENTITY.name(), message);
+	protected void unprocessable(RestChannel channel, String message) {
+		response(channel, RestStatus.UNPROCESSABLE_ENTITY, RestStatus.UNPROCESSABLE_ENTITY.name(), message);
 	}
 
-	protected Tuple<String[], RestResponse> notImplemented(Method method) {
-		return response(RestStatus.NOT_IMPLEMENTED, RestStatus.NOT_IMPLEMENTED.name(),
+	protected void notImplemented(RestChannel channel, Method method) {
+		response(channel, RestStatus.NOT_IMPLEMENTED, RestStatus.NOT_IMPLEMENTED.name(),
 				"Method " + method.name() + " not supported for this action.");
 	}
 
+	/**
+	 * Listener for the asynchronous stages of a request. Failures of any stage
+	 * are answered with an internal server error, subclasses only need to
+	 * send the response for the success case.
+	 */
+	protected abstract class OnSucessActionListener<Response> implements ActionListener<Response> {
+
+		private final RestChannel channel;
+
+		public OnSucessActionListener(RestChannel channel) {
+			super();
+			this.channel = channel;
+		}
+
+		@Override
+		public final void onFailure(Exception e) {
+			channel.sendResponse(new BytesRestResponse(ExceptionsHelper.status(e), e.toString()));
+		}
+
+	}
+
 	/**
 	 * Consume all defined parameters for the request. Before we handle the
 	 * request in subclasses where we actually need the parameter, some global
@@ -499,7 +1452,22 @@ public abstract class AbstractApiAction extends BaseRestHandler {
 	 * @param request
 	 */
 	protected void consumeParameters(final RestRequest request) {
-		request.param("name");
+		final String name = request.param("name");
+		// a query only applies to the complete configuration, elsewhere ES
+		// rejects its parameters as unrecognized
+		if (request.method() == Method.GET && (name == null || name.length() == 0)) {
+			for (final String param : ResourceQuery.PARAMS) {
+				request.param(param);
+			}
+		}
+	}
+
+	/**
+	 * true if the resources of this configuration have a list of roles the
+	 * role parameter of a query can filter on
+	 */
+	protected boolean supportsRoleFilter() {
+		return false;
 	}
 
 	private static void printLicenseInfo() {
@@ -533,6 +1501,12 @@ public abstract class AbstractApiAction extends BaseRestHandler {
 		return getClass().getSimpleName();
 	}
 
+	@Override
+	public boolean supportsContentStream() {
+		// allow application/x-ndjson for bulk requests
+		return true;
+	}
+
 	protected abstract Endpoint getEndpoint();
 
 }
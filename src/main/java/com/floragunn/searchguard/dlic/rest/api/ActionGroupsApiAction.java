@@ -15,6 +15,7 @@
 package com.floragunn.searchguard.dlic.rest.api;
 
 import java.nio.file.Path;
+import java.util.concurrent.Executor;
 
 import org.elasticsearch.client.Client;
 import org.elasticsearch.cluster.service.ClusterService;
@@ -22,7 +23,6 @@ import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.rest.RestController;
-import org.elasticsearch.rest.RestRequest;
 import org.elasticsearch.rest.RestRequest.Method;
 import org.elasticsearch.threadpool.ThreadPool;
 
@@ -40,8 +40,9 @@ public class ActionGroupsApiAction extends AbstractApiAction {
 	@Inject
 	public ActionGroupsApiAction(final Settings settings, final Path configPath, final RestController controller, final Client client,
 			final AdminDNs adminDNs, final IndexBaseConfigurationRepository cl, final ClusterService cs,
-            final PrincipalExtractor principalExtractor, final PrivilegesEvaluator evaluator, ThreadPool threadPool, AuditLog auditLog) {
-		super(settings, configPath, controller, client, adminDNs, cl, cs, principalExtractor, evaluator, threadPool, auditLog);
+            final PrincipalExtractor principalExtractor, final PrivilegesEvaluator evaluator, ThreadPool threadPool, AuditLog auditLog, Executor managementExecutor,
+            final RestApiPrivilegesEvaluator restApiPrivilegesEvaluator, final ConfigIndexState configIndexState) {
+		super(settings, configPath, controller, client, adminDNs, cl, cs, principalExtractor, evaluator, threadPool, auditLog, managementExecutor, restApiPrivilegesEvaluator, configIndexState);
 
 		// legacy mapping for backwards compatibility
 		// TODO: remove in SG7
@@ -55,6 +56,10 @@ public class ActionGroupsApiAction extends AbstractApiAction {
 		controller.registerHandler(Method.GET, "/_searchguard/api/actiongroups/", this);
 		controller.registerHandler(Method.DELETE, "/_searchguard/api/actiongroups/{name}", this);
 		controller.registerHandler(Method.PUT, "/_searchguard/api/actiongroups/{name}", this);
+		controller.registerHandler(Method.POST, "/_searchguard/api/actiongroups/" + BULK_ENDPOINT, this);
+		controller.registerHandler(Method.POST, "/_searchguard/api/actiongroups/" + PATCH_ENDPOINT, this);
+		controller.registerHandler(Method.POST, "/_searchguard/api/actiongroups/{name}/" + PATCH_ENDPOINT, this);
+		controller.registerHandler(Method.POST, "/_searchguard/api/actiongroups/" + MGET_ENDPOINT, this);
 
 	}
 	
@@ -78,9 +83,4 @@ public class ActionGroupsApiAction extends AbstractApiAction {
 		return ConfigConstants.CONFIGNAME_ACTION_GROUPS;
 	}
 
-	@Override
-	protected void consumeParameters(final RestRequest request) {
-		request.param("name");		
-	}
-
 }
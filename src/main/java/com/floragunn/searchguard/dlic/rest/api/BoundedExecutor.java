@@ -0,0 +1,150 @@
+/*
+ * Copyright 2016-2017 by floragunn GmbH - All rights reserved
+ *
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed here is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * This software is free of charge for non-commercial and academic use.
+ * For commercial use in a production environment you have to obtain a license
+ * from https://floragunn.com
+ *
+ */
+
+package com.floragunn.searchguard.dlic.rest.api;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsearch.common.util.concurrent.AbstractRunnable;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.common.util.concurrent.ThreadContext;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+/**
+ * Runs the tasks of the REST API on an executor of the node's thread pool,
+ * at most a fixed number at the same time. Further tasks wait in a bounded
+ * queue and are rejected like on a fixed pool once it is full. Queued tasks
+ * keep the thread context of the request that submitted them.
+ */
+public final class BoundedExecutor implements Executor {
+
+	private final Logger log = LogManager.getLogger(this.getClass());
+	private final String name;
+	private final ThreadContext threadContext;
+	private final Executor delegate;
+	private final int maxRunning;
+	private final int queueSize;
+
+	// guarded by this
+	private final Queue<Runnable> queue = new ArrayDeque<>();
+	private int running;
+	private long rejected;
+
+	/**
+	 * @param maxRunning
+	 *            how many tasks run on the delegate at the same time
+	 * @param queueSize
+	 *            how many tasks may wait for a running one to complete
+	 */
+	public BoundedExecutor(final String name, final ThreadContext threadContext, final Executor delegate, final int maxRunning,
+			final int queueSize) {
+		if (maxRunning < 1) {
+			throw new IllegalArgumentException("maxRunning must be at least 1");
+		}
+		this.name = name;
+		this.threadContext = threadContext;
+		this.delegate = delegate;
+		this.maxRunning = maxRunning;
+		this.queueSize = queueSize;
+	}
+
+	@Override
+	public void execute(final Runnable command) {
+		Runnable task = threadContext.preserveContext(command);
+
+		synchronized (this) {
+			if (running == maxRunning) {
+				if (queue.size() < queueSize) {
+					queue.add(task);
+					return;
+				}
+				rejected++;
+				task = null;
+			} else {
+				running++;
+			}
+		}
+
+		if (task == null) {
+			reject(command, new EsRejectedExecutionException("rejected execution of " + command + " on " + name + ", " + maxRunning
+					+ " tasks running and " + queueSize + " queued"));
+		} else {
+			start(task);
+		}
+	}
+
+	private void start(final Runnable task) {
+		try {
+			delegate.execute(() -> runAll(task));
+		} catch (final EsRejectedExecutionException e) {
+			// the node is shutting down, nothing runs the queue anymore
+			synchronized (this) {
+				running--;
+			}
+			reject(task, e);
+		}
+	}
+
+	/** runs the task, then the queued ones until the queue is empty */
+	private void runAll(final Runnable task) {
+		Runnable next = task;
+		while (next != null) {
+			try {
+				next.run();
+			} catch (final RuntimeException e) {
+				log.error("Uncaught exception in task of {}", name, e);
+			}
+			next = poll();
+		}
+	}
+
+	private synchronized Runnable poll() {
+		final Runnable next = queue.poll();
+		if (next == null) {
+			running--;
+		}
+		return next;
+	}
+
+	private void reject(final Runnable task, final EsRejectedExecutionException e) {
+		if (log.isDebugEnabled()) {
+			log.debug("Rejected task of {}: {}", name, e.getMessage());
+		}
+		if (task instanceof AbstractRunnable) {
+			try {
+				((AbstractRunnable) task).onRejection(e);
+			} finally {
+				((AbstractRunnable) task).onAfter();
+			}
+		} else {
+			throw e;
+		}
+	}
+
+	/** the running and queued tasks and the number of rejected ones */
+	public synchronized void stats(final XContentBuilder builder) throws IOException {
+		builder.startObject(name);
+		builder.field("running", running);
+		builder.field("max_running", maxRunning);
+		builder.field("queue", queue.size());
+		builder.field("queue_size", queueSize);
+		builder.field("rejected", rejected);
+		builder.endObject();
+	}
+}
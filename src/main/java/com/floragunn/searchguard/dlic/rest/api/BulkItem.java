@@ -0,0 +1,227 @@
+/*
+ * Copyright 2016-2017 by floragunn GmbH - All rights reserved
+ *
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed here is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * This software is free of charge for non-commercial and academic use.
+ * For commercial use in a production environment you have to obtain a license
+ * from https://floragunn.com
+ *
+ */
+
+package com.floragunn.searchguard.dlic.rest.api;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.elasticsearch.ElasticsearchParseException;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.rest.RestStatus;
+
+/**
+ * A single operation of a bulk request against one of the configuration
+ * endpoints. Bulk bodies use the same NDJSON layout as the Elasticsearch bulk
+ * API, an action line followed by a source line for all but delete:
+ *
+ * <pre>
+ * { "create" : { "_id" : "name" } }
+ * { ...resource... }
+ * { "delete" : { "_id" : "other" } }
+ * </pre>
+ */
+public class BulkItem {
+
+	public static enum OpType {
+		/** add a new resource, fails if it already exists */
+		CREATE,
+		/** add or replace a resource, same as PUT */
+		INDEX,
+		/** replace an existing resource, fails if it does not exist */
+		UPDATE,
+		/** remove an existing resource */
+		DELETE;
+
+		public String lowercase() {
+			return name().toLowerCase(Locale.ROOT);
+		}
+	}
+
+	private final OpType opType;
+	private final String id;
+	private final BytesReference source;
+	private Settings.Builder settings;
+	private RestStatus status;
+	private String result;
+	private BytesReference error;
+
+	BulkItem(final OpType opType, final String id, final BytesReference source) {
+		this.opType = opType;
+		this.id = id;
+		this.source = source;
+	}
+
+	public OpType getOpType() {
+		return opType;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public BytesReference getSource() {
+		return source;
+	}
+
+	/** validated content of the source line, null for deletes */
+	public Settings.Builder getSettings() {
+		return settings;
+	}
+
+	public void setSettings(final Settings.Builder settings) {
+		this.settings = settings;
+	}
+
+	public boolean isFailed() {
+		return error != null;
+	}
+
+	public RestStatus getStatus() {
+		return status;
+	}
+
+	/** the error object of a failed item, null otherwise */
+	public BytesReference getError() {
+		return error;
+	}
+
+	public void success(final RestStatus status, final String result) {
+		this.status = status;
+		this.result = result;
+	}
+
+	public void fail(final RestStatus status, final String reason) {
+		try {
+			final XContentBuilder builder = XContentFactory.jsonBuilder();
+			builder.startObject();
+			builder.field("status", "error");
+			builder.field("reason", reason);
+			builder.endObject();
+			fail(status, builder);
+		} catch (IOException e) {
+			throw new ElasticsearchParseException("Cannot build error", e);
+		}
+	}
+
+	/** fail with a complete error object, e.g. the errors of a validator */
+	public void fail(final RestStatus status, final XContentBuilder error) {
+		this.status = status;
+		this.error = error.bytes();
+	}
+
+	public void toXContent(final XContentBuilder builder) throws IOException {
+		builder.startObject();
+		builder.startObject(opType.lowercase());
+		builder.field("_id", id);
+		builder.field("status", status.getStatus());
+		if (error != null) {
+			builder.rawField("error", error, XContentType.JSON);
+		} else {
+			builder.field("result", result);
+		}
+		builder.endObject();
+		builder.endObject();
+	}
+
+	/**
+	 * Parses a NDJSON bulk body.
+	 *
+	 * @throws ElasticsearchParseException if the body is malformed
+	 */
+	public static List<BulkItem> parse(final BytesReference content) {
+		final List<BulkItem> items = new ArrayList<>();
+
+		if (content == null) {
+			return items;
+		}
+
+		int from = 0;
+		int line = 0;
+		final int length = content.length();
+
+		while (from < length) {
+			int next = nextLine(content, from);
+			line++;
+			final BytesReference actionLine = content.slice(from, next - from);
+			from = next + 1;
+
+			if (isBlank(actionLine)) {
+				continue;
+			}
+
+			final Map<String, Object> action = XContentHelper.convertToMap(actionLine, false, XContentType.JSON).v2();
+
+			if (action.size() != 1) {
+				throw new ElasticsearchParseException("Malformed action in line [{}], expected exactly one operation", line);
+			}
+
+			final String op = action.keySet().iterator().next();
+			final OpType opType;
+			try {
+				opType = OpType.valueOf(op.toUpperCase(Locale.ROOT));
+			} catch (IllegalArgumentException e) {
+				throw new ElasticsearchParseException("Unknown operation [{}] in line [{}]", op, line);
+			}
+
+			final Object meta = action.get(op);
+			final Object id = meta instanceof Map ? ((Map<?, ?>) meta).get("_id") : null;
+			if (id == null || id.toString().isEmpty()) {
+				throw new ElasticsearchParseException("Missing _id for operation [{}] in line [{}]", op, line);
+			}
+
+			BytesReference source = null;
+			if (opType != OpType.DELETE) {
+				if (from >= length) {
+					throw new ElasticsearchParseException("Missing source for operation [{}] in line [{}]", op, line);
+				}
+				next = nextLine(content, from);
+				line++;
+				source = content.slice(from, next - from);
+				from = next + 1;
+			}
+
+			items.add(new BulkItem(opType, id.toString(), source));
+		}
+
+		return items;
+	}
+
+	private static int nextLine(final BytesReference content, final int from) {
+		final int length = content.length();
+		for (int i = from; i < length; i++) {
+			if (content.get(i) == '\n') {
+				return i;
+			}
+		}
+		return length;
+	}
+
+	private static boolean isBlank(final BytesReference bytes) {
+		for (int i = 0; i < bytes.length(); i++) {
+			if (!Character.isWhitespace(bytes.get(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
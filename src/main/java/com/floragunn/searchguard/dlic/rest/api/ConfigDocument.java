@@ -0,0 +1,177 @@
+/*
+ * Copyright 2016-2017 by floragunn GmbH - All rights reserved
+ *
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed here is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * This software is free of charge for non-commercial and academic use.
+ * For commercial use in a production environment you have to obtain a license
+ * from https://floragunn.com
+ *
+ */
+
+package com.floragunn.searchguard.dlic.rest.api;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.elasticsearch.ElasticsearchParseException;
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.common.CheckedFunction;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.lucene.uid.Versions;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+
+import com.floragunn.searchguard.dlic.rest.support.JsonPatch;
+import com.floragunn.searchguard.dlic.rest.support.Utils;
+
+/**
+ * A configuration as read from the Search Guard index together with the
+ * version of its document. Writes of a changed configuration carry the
+ * version, so concurrent modifications are detected instead of overwritten.
+ * Instances are immutable and may be shared between requests.
+ */
+public class ConfigDocument {
+
+	/** name of the serialized form of the complete configuration */
+	static final String ALL = "";
+
+	private final String configName;
+	private final Settings settings;
+	private final long version;
+	// the JSON the settings were loaded from, null if unknown
+	private final BytesReference source;
+	private volatile Map<String, Object> structuredMap;
+	private volatile String[] sortedNames;
+	// responses built from this document, by resource name
+	private final ConcurrentMap<String, BytesReference> serialized = new ConcurrentHashMap<>();
+
+	public ConfigDocument(final String configName, final Settings settings, final long version) {
+		this(configName, settings, version, null);
+	}
+
+	private ConfigDocument(final String configName, final Settings settings, final long version, final BytesReference source) {
+		this.configName = configName;
+		this.settings = settings;
+		this.version = version;
+		this.source = source;
+	}
+
+	public String getConfigName() {
+		return configName;
+	}
+
+	public Settings getSettings() {
+		return settings;
+	}
+
+	/**
+	 * The configuration as structured map. Converted once per document and
+	 * shared, so neither the map nor its values must be modified.
+	 */
+	public Map<String, Object> getStructuredMap() {
+		Map<String, Object> map = structuredMap;
+		if (map == null) {
+			// converting twice in a race is harmless, both results are equal
+			map = Collections.unmodifiableMap(source != null ? Utils.convertSettingsJsonToStructuredMap(source)
+					: Utils.convertJsonToxToStructuredMap(settings));
+			structuredMap = map;
+		}
+		return map;
+	}
+
+	/**
+	 * The names of all resources in natural order, to page through the
+	 * configuration by binary search. Shared, must not be modified.
+	 */
+	String[] getSortedNames() {
+		String[] names = sortedNames;
+		if (names == null) {
+			names = getStructuredMap().keySet().toArray(new String[0]);
+			Arrays.sort(names);
+			sortedNames = names;
+		}
+		return names;
+	}
+
+	/** a modifiable deep copy of {@link #getStructuredMap()} */
+	@SuppressWarnings("unchecked")
+	public Map<String, Object> copyStructuredMap() {
+		return (Map<String, Object>) JsonPatch.deepCopy(getStructuredMap());
+	}
+
+	/**
+	 * The serialized form of the resource with the given name, or of the
+	 * complete configuration for {@link #ALL}. Built by the serializer on
+	 * first use and kept as long as the document, which is replaced on every
+	 * change.
+	 */
+	BytesReference serialized(final String name, final CheckedFunction<String, BytesReference, IOException> serializer) {
+		BytesReference content = serialized.get(name);
+		if (content == null) {
+			try {
+				content = serializer.apply(name);
+			} catch (IOException e) {
+				throw ExceptionsHelper.convertToElastic(e);
+			}
+			serialized.putIfAbsent(name, content);
+		}
+		return content;
+	}
+
+	/**
+	 * The version of the document, {@link Versions#MATCH_DELETED} if it does
+	 * not exist yet
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	public boolean exists() {
+		return version != Versions.MATCH_DELETED;
+	}
+
+	/**
+	 * Reads the document in the same layout the configuration loader expects,
+	 * a single field named like the configuration holding the JSON as binary
+	 * value.
+	 */
+	public static ConfigDocument fromGetResponse(final String configName, final GetResponse response) {
+		if (!response.isExists() || response.isSourceEmpty()) {
+			return new ConfigDocument(configName, Settings.EMPTY, Versions.MATCH_DELETED);
+		}
+
+		final BytesReference source = response.getSourceAsBytesRef();
+
+		try (XContentParser parser = XContentType.JSON.xContent().createParser(NamedXContentRegistry.EMPTY, source)) {
+			parser.nextToken();
+			parser.nextToken();
+
+			if (!configName.equals(parser.currentName())) {
+				throw new ElasticsearchParseException("Cannot parse config for type {} because {}!={}", configName,
+						parser.currentName(), configName);
+			}
+
+			parser.nextToken();
+
+			final byte[] json = parser.binaryValue();
+			final Settings settings = Settings.builder()
+					.loadFromStream("dummy.json", new ByteArrayInputStream(json), true).build();
+			return new ConfigDocument(configName, settings, response.getVersion(), new BytesArray(json));
+		} catch (IOException e) {
+			throw new ElasticsearchParseException("Cannot parse config for type {}", e, configName);
+		}
+	}
+}
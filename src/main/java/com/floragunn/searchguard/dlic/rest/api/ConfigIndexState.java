@@ -0,0 +1,105 @@
+/*
+ * Copyright 2016-2017 by floragunn GmbH - All rights reserved
+ *
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed here is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * This software is free of charge for non-commercial and academic use.
+ * For commercial use in a production environment you have to obtain a license
+ * from https://floragunn.com
+ *
+ */
+
+package com.floragunn.searchguard.dlic.rest.api;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import org.elasticsearch.cluster.ClusterChangedEvent;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.ClusterStateListener;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.cluster.metadata.MetaData;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.settings.Settings;
+
+import com.floragunn.searchguard.support.ConfigConstants;
+
+/**
+ * Whether the Search Guard index exists and how its documents are laid out.
+ * Derived from the cluster state only when the metadata changes, so handlers
+ * read a field instead of inspecting the cluster state on every request.
+ */
+public class ConfigIndexState implements ClusterStateListener {
+
+	private static final class Snapshot {
+
+		private final boolean indexExists;
+		// one type per configuration with document id 0, or the legacy "sg"
+		// type with the configuration name as id
+		private final boolean typePerConfig;
+
+		private Snapshot(final boolean indexExists, final boolean typePerConfig) {
+			this.indexExists = indexExists;
+			this.typePerConfig = typePerConfig;
+		}
+	}
+
+	private final String searchguardIndex;
+	private final Supplier<ClusterState> clusterState;
+	private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+
+	public ConfigIndexState(final Settings settings, final ClusterService cs) {
+		this(settings.get(ConfigConstants.SEARCHGUARD_CONFIG_INDEX_NAME, ConfigConstants.SG_DEFAULT_CONFIG_INDEX), cs::state);
+		cs.addListener(this);
+	}
+
+	ConfigIndexState(final String searchguardIndex, final Supplier<ClusterState> clusterState) {
+		this.searchguardIndex = searchguardIndex;
+		this.clusterState = clusterState;
+	}
+
+	@Override
+	public void clusterChanged(final ClusterChangedEvent event) {
+		if (snapshot.get() == null || event.metaDataChanged()) {
+			snapshot.set(snapshot(event.state()));
+		}
+	}
+
+	public String getIndex() {
+		return searchguardIndex;
+	}
+
+	public boolean indexExists() {
+		return snapshot().indexExists;
+	}
+
+	/** the document type of the given configuration */
+	public String type(final String config) {
+		return snapshot().typePerConfig ? config : "sg";
+	}
+
+	/** the document id of the given configuration */
+	public String id(final String config) {
+		return snapshot().typePerConfig ? "0" : config;
+	}
+
+	private Snapshot snapshot() {
+		final Snapshot current = snapshot.get();
+		if (current != null) {
+			return current;
+		}
+		// no cluster state has been applied since we registered. If one is
+		// applied meanwhile, it is newer than the one read here and wins.
+		snapshot.compareAndSet(null, snapshot(clusterState.get()));
+		return snapshot.get();
+	}
+
+	private Snapshot snapshot(final ClusterState state) {
+		final MetaData metaData = state.metaData();
+		final IndexMetaData index = metaData.index(searchguardIndex);
+		return new Snapshot(metaData.hasConcreteIndex(searchguardIndex), index != null && index.mapping("config") != null);
+	}
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2016-2017 by floragunn GmbH - All rights reserved
+ *
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed here is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * This software is free of charge for non-commercial and academic use.
+ * For commercial use in a production environment you have to obtain a license
+ * from https://floragunn.com
+ *
+ */
+
+package com.floragunn.searchguard.dlic.rest.api;
+
+import java.util.Map;
+
+import org.elasticsearch.rest.RestStatus;
+
+/**
+ * A change to a single configuration. Mutations are applied in order to the
+ * structured configuration as currently stored in the index, several of them
+ * to the same copy if they are written together. If the document has been
+ * written concurrently in the meantime, the mutation is applied again to the
+ * fresh document, so it must not depend on state from earlier attempts.
+ */
+@FunctionalInterface
+public interface ConfigMutation {
+
+	/**
+	 * Applies the change to config. The map must only be modified if the
+	 * result says so, i.e. all checks have to happen first.
+	 *
+	 * @param config
+	 *            the structured configuration
+	 * @return whether config has been modified and the response to send
+	 */
+	Result apply(Map<String, Object> config);
+
+	public static final class Result {
+
+		private final RestStatus status;
+		private final String message;
+		private final boolean write;
+		private final Boolean changed;
+
+		private Result(final RestStatus status, final String message, final boolean write, final Boolean changed) {
+			this.status = status;
+			this.message = message;
+			this.write = write;
+			this.changed = changed;
+		}
+
+		/** the configuration has been modified, answer once it is written */
+		public static Result write(final RestStatus status, final String message) {
+			return new Result(status, message, true, null);
+		}
+
+		/** answer without writing, e.g. if the request was not valid */
+		public static Result respond(final RestStatus status, final String message) {
+			return new Result(status, message, false, null);
+		}
+
+		/** answer without writing because the configuration would not change */
+		public static Result unchanged(final String message) {
+			return new Result(RestStatus.OK, message, false, Boolean.FALSE);
+		}
+
+		public RestStatus getStatus() {
+			return status;
+		}
+
+		public String getMessage() {
+			return message;
+		}
+
+		/** true if the configuration has been modified and needs to be written */
+		public boolean isWrite() {
+			return write;
+		}
+
+		public Boolean getChanged() {
+			return changed;
+		}
+	}
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2016-2017 by floragunn GmbH - All rights reserved
+ *
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed here is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * This software is free of charge for non-commercial and academic use.
+ * For commercial use in a production environment you have to obtain a license
+ * from https://floragunn.com
+ *
+ */
+
+package com.floragunn.searchguard.dlic.rest.api;
+
+/**
+ * The last document of a configuration read from the index. Requests are
+ * served from it until the configuration is written or reloaded, so the
+ * document is read and converted only once per change.
+ */
+final class ConfigSnapshot {
+
+	private volatile ConfigDocument document;
+
+	// incremented on every invalidation, so that a read which started before
+	// cannot store an outdated document afterwards
+	private long generation;
+
+	/** the current document, null if it has to be read from the index */
+	ConfigDocument get() {
+		return document;
+	}
+
+	synchronized long generation() {
+		return generation;
+	}
+
+	/** stores the document unless the snapshot has been invalidated since generation was taken */
+	synchronized void put(final ConfigDocument document, final long generation) {
+		if (this.generation == generation) {
+			this.document = document;
+		}
+	}
+
+	synchronized void invalidate() {
+		generation++;
+		document = null;
+	}
+}
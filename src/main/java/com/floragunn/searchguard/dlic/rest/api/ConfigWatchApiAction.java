@@ -0,0 +1,336 @@
+/*
+ * Copyright 2016-2017 by floragunn GmbH - All rights reserved
+ *
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed here is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * This software is free of charge for non-commercial and academic use.
+ * For commercial use in a production environment you have to obtain a license
+ * from https://floragunn.com
+ *
+ */
+
+package com.floragunn.searchguard.dlic.rest.api;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.lucene.uid.Versions;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.FutureUtils;
+import org.elasticsearch.common.util.concurrent.ThreadContext.StoredContext;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.rest.BytesRestResponse;
+import org.elasticsearch.rest.RestChannel;
+import org.elasticsearch.rest.RestController;
+import org.elasticsearch.rest.RestRequest;
+import org.elasticsearch.rest.RestRequest.Method;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.threadpool.ThreadPool;
+
+import com.floragunn.searchguard.auditlog.AuditLog;
+import com.floragunn.searchguard.configuration.AdminDNs;
+import com.floragunn.searchguard.configuration.IndexBaseConfigurationRepository;
+import com.floragunn.searchguard.configuration.PrivilegesEvaluator;
+import com.floragunn.searchguard.dlic.rest.validation.AbstractConfigurationValidator;
+import com.floragunn.searchguard.dlic.rest.validation.NoOpValidator;
+import com.floragunn.searchguard.ssl.transport.PrincipalExtractor;
+import com.floragunn.searchguard.support.ConfigConstants;
+import com.google.common.base.Joiner;
+
+/**
+ * Long poll for configuration changes. A request is answered as soon as the
+ * version of one of the watched configurations is greater than the version
+ * the client knows, or with an empty result when the timeout expires. Waiting
+ * requests are only registered, no thread is blocked. They are checked again
+ * whenever a configuration is reloaded, i.e. after every change made through
+ * the API or sgadmin.
+ * <p>
+ * {@code since} is either one version for all types or a list of
+ * {@code type:version} pairs. Without it the current versions are returned
+ * immediately.
+ */
+public class ConfigWatchApiAction extends AbstractApiAction {
+
+	/** upper bound for the timeout parameter of a watch request */
+	private static final TimeValue MAX_TIMEOUT = TimeValue.timeValueMinutes(1);
+
+	/** number of watch requests that may wait at the same time, further ones are rejected with 429 */
+	private static final int MAX_WATCHERS = 1000;
+
+	private static final TimeValue DEFAULT_TIMEOUT = TimeValue.timeValueSeconds(30);
+
+	private final Client client;
+	private final Set<Watcher> watchers = ConcurrentHashMap.newKeySet();
+
+	@Inject
+	public ConfigWatchApiAction(final Settings settings, final Path configPath, final RestController controller, final Client client,
+			final AdminDNs adminDNs, final IndexBaseConfigurationRepository cl, final ClusterService cs,
+			final PrincipalExtractor principalExtractor, final PrivilegesEvaluator evaluator, ThreadPool threadPool, AuditLog auditLog, Executor managementExecutor,
+			final RestApiPrivilegesEvaluator restApiPrivilegesEvaluator, final ConfigIndexState configIndexState) {
+		super(settings, configPath, controller, client, adminDNs, cl, cs, principalExtractor, evaluator, threadPool, auditLog, managementExecutor, restApiPrivilegesEvaluator, configIndexState);
+		this.client = client;
+		controller.registerHandler(Method.GET, "/_searchguard/api/_watch", this);
+
+		for (final String config : ConfigConstants.CONFIG_NAMES) {
+			cl.subscribeOnChange(config, s -> onChange());
+		}
+	}
+
+	@Override
+	protected Endpoint getEndpoint() {
+		return Endpoint.WATCH;
+	}
+
+	@Override
+	protected void handleGet(final RestChannel channel, final RestRequest request, final Client client,
+			final Settings.Builder additionalSettings) throws IOException {
+
+		final List<String> types;
+		final Map<String, Long> since;
+		final TimeValue timeout;
+		try {
+			types = parseTypes(request.param("types"));
+			since = parseSince(request.param("since"), types);
+			timeout = request.paramAsTime("timeout", DEFAULT_TIMEOUT);
+		} catch (final IllegalArgumentException e) {
+			badRequestResponse(channel, e.getMessage());
+			return;
+		}
+
+		if (timeout.compareTo(MAX_TIMEOUT) > 0) {
+			badRequestResponse(channel, "Timeout must not exceed " + MAX_TIMEOUT);
+			return;
+		}
+
+		if (watchers.size() >= MAX_WATCHERS) {
+			response(channel, RestStatus.TOO_MANY_REQUESTS, RestStatus.TOO_MANY_REQUESTS.name(), "Too many watch requests.");
+			return;
+		}
+
+		// registered before the versions are read, so a change in between is
+		// seen by one of the two
+		final Watcher watcher = new Watcher(channel, types, since);
+		watchers.add(watcher);
+		watcher.timeout = threadPool.schedule(timeout, ThreadPool.Names.SAME, watcher::timedOut);
+
+		loadVersions(client, types, new ActionListener<Map<String, Long>>() {
+
+			@Override
+			public void onResponse(final Map<String, Long> versions) {
+				watcher.check(versions);
+			}
+
+			@Override
+			public void onFailure(final Exception e) {
+				watcher.fail(e);
+			}
+		});
+	}
+
+	/** a configuration has been reloaded, one read of all versions answers every watcher it concerns */
+	private void onChange() {
+		if (watchers.isEmpty()) {
+			return;
+		}
+
+		try (StoredContext ctx = threadPool.getThreadContext().stashContext()) {
+			threadPool.getThreadContext().putHeader(ConfigConstants.SG_CONF_REQUEST_HEADER, "true");
+
+			loadVersions(client, ConfigConstants.CONFIG_NAMES, new ActionListener<Map<String, Long>>() {
+
+				@Override
+				public void onResponse(final Map<String, Long> versions) {
+					for (final Watcher watcher : watchers) {
+						watcher.check(versions);
+					}
+				}
+
+				@Override
+				public void onFailure(final Exception e) {
+					// the watchers are answered by the next change or their timeout
+					log.warn("Cannot read configuration versions for watch requests", e);
+				}
+			});
+		}
+	}
+
+	private static List<String> parseTypes(final String param) {
+		if (param == null || param.trim().isEmpty()) {
+			return ConfigConstants.CONFIG_NAMES;
+		}
+
+		final List<String> types = new ArrayList<>();
+		for (String type : param.split(",")) {
+			type = type.trim();
+			if (!ConfigConstants.CONFIG_NAMES.contains(type)) {
+				throw new IllegalArgumentException(
+						"Unknown configuration type '" + type + "', must be one of " + Joiner.on(",").join(ConfigConstants.CONFIG_NAMES));
+			}
+			if (!types.contains(type)) {
+				types.add(type);
+			}
+		}
+		return types;
+	}
+
+	private static Map<String, Long> parseSince(final String param, final List<String> types) {
+		final Map<String, Long> since = new HashMap<>();
+
+		if (param == null || param.trim().isEmpty()) {
+			for (final String type : types) {
+				since.put(type, Versions.NOT_FOUND);
+			}
+			return since;
+		}
+
+		if (param.indexOf(':') == -1) {
+			final long version = parseVersion(param);
+			for (final String type : types) {
+				since.put(type, version);
+			}
+			return since;
+		}
+
+		for (final String pair : param.split(",")) {
+			final int colon = pair.indexOf(':');
+			final String type = colon == -1 ? "" : pair.substring(0, colon).trim();
+			if (!types.contains(type)) {
+				throw new IllegalArgumentException("Invalid since '" + pair + "', expected type:version for one of the watched types");
+			}
+			since.put(type, parseVersion(pair.substring(colon + 1)));
+		}
+		// like without since, types without a version are reported at once
+		for (final String type : types) {
+			since.putIfAbsent(type, Versions.NOT_FOUND);
+		}
+		return since;
+	}
+
+	private static long parseVersion(final String version) {
+		try {
+			return Long.parseLong(version.trim());
+		} catch (final NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid version '" + version + "'");
+		}
+	}
+
+	/** one waiting request, answered exactly once */
+	private final class Watcher {
+
+		private final RestChannel channel;
+		private final List<String> types;
+		private final Map<String, Long> since;
+		private final AtomicBoolean done = new AtomicBoolean();
+		private volatile Map<String, Long> lastVersions = Collections.emptyMap();
+		private volatile ScheduledFuture<?> timeout;
+
+		private Watcher(final RestChannel channel, final List<String> types, final Map<String, Long> since) {
+			this.channel = channel;
+			this.types = types;
+			this.since = since;
+		}
+
+		private void check(final Map<String, Long> versions) {
+			final Map<String, Long> current = new LinkedHashMap<>();
+			final Map<String, Long> changed = new LinkedHashMap<>();
+			for (final String type : types) {
+				final Long version = versions.get(type);
+				if (version == null) {
+					continue;
+				}
+				current.put(type, version);
+				if (version > since.get(type)) {
+					changed.put(type, version);
+				}
+			}
+			lastVersions = current;
+
+			if (!changed.isEmpty()) {
+				complete(changed, current, false);
+			}
+		}
+
+		private void timedOut() {
+			complete(Collections.emptyMap(), lastVersions, true);
+		}
+
+		private void fail(final Exception e) {
+			if (finish()) {
+				channel.sendResponse(new BytesRestResponse(RestStatus.INTERNAL_SERVER_ERROR, e.toString()));
+			}
+		}
+
+		private void complete(final Map<String, Long> changed, final Map<String, Long> versions, final boolean timedOut) {
+			if (!finish()) {
+				return;
+			}
+
+			try {
+				final XContentBuilder builder = XContentFactory.jsonBuilder();
+				builder.startObject();
+				builder.field("timed_out", timedOut);
+				builder.field("changed", changed);
+				builder.field("versions", versions);
+				builder.endObject();
+				channel.sendResponse(new BytesRestResponse(RestStatus.OK, builder));
+			} catch (final IOException e) {
+				log.error("Cannot build response", e);
+				channel.sendResponse(new BytesRestResponse(RestStatus.INTERNAL_SERVER_ERROR, e.toString()));
+			}
+		}
+
+		private boolean finish() {
+			if (!done.compareAndSet(false, true)) {
+				return false;
+			}
+			watchers.remove(this);
+			FutureUtils.cancel(timeout);
+			return true;
+		}
+	}
+
+	@Override
+	protected AbstractConfigurationValidator getValidator(final Method method, final BytesReference ref) {
+		return new NoOpValidator(method, ref);
+	}
+
+	@Override
+	protected String getResourceName() {
+		// GET is handled by this class directly
+		return null;
+	}
+
+	@Override
+	protected String getConfigName() {
+		// versions of all configurations are read by this class directly
+		return null;
+	}
+
+	@Override
+	protected void consumeParameters(final RestRequest request) {
+		request.param("types");
+		request.param("since");
+		request.param("timeout");
+	}
+}
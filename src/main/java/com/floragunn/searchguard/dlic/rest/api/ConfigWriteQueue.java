@@ -0,0 +1,271 @@
+/*
+ * Copyright 2016-2017 by floragunn GmbH - All rights reserved
+ *
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed here is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * This software is free of charge for non-commercial and academic use.
+ * For commercial use in a production environment you have to obtain a license
+ * from https://floragunn.com
+ *
+ */
+
+package com.floragunn.searchguard.dlic.rest.api;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.lucene.uid.Versions;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.AbstractRunnable;
+import org.elasticsearch.index.engine.VersionConflictEngineException;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.threadpool.ThreadPool;
+
+import com.floragunn.searchguard.dlic.rest.support.Utils;
+
+/**
+ * Collects the mutations of one configuration and writes them together. While
+ * a write is in flight, or within the configured window, further mutations
+ * are queued; the next batch applies all of them in order to one copy of the
+ * configuration and does one index write and one propagation. Every mutation
+ * is then answered with its own result.
+ */
+public abstract class ConfigWriteQueue {
+
+	/** writes as soon as no other write is in flight */
+	public static final TimeValue DEFAULT_WINDOW = TimeValue.timeValueMillis(0);
+
+	public static final int DEFAULT_MAX_OPERATIONS = 100;
+
+	/** the answer for a single mutation */
+	public interface Callback {
+
+		/**
+		 * @param version
+		 *            the version of the document the result refers to
+		 */
+		void onResult(ConfigMutation.Result result, long version);
+
+		void onFailure(Exception e);
+	}
+
+	private static final class Entry {
+
+		private final ConfigMutation mutation;
+		private final long expectedVersion;
+		private final Callback callback;
+		private ConfigMutation.Result result;
+
+		private Entry(final ConfigMutation mutation, final long expectedVersion, final Callback callback) {
+			this.mutation = mutation;
+			this.expectedVersion = expectedVersion;
+			this.callback = callback;
+		}
+	}
+
+	private final Logger log = LogManager.getLogger(this.getClass());
+	private final String configName;
+	private final ThreadPool threadPool;
+	private final Executor executor;
+	private final TimeValue window;
+	private final int maxOperations;
+
+	private final Deque<Entry> pending = new ArrayDeque<>();
+	private boolean flushing;
+	private boolean scheduled;
+
+	/**
+	 * @param window
+	 *            how long to wait for further mutations before writing, 0
+	 *            writes as soon as no other write is in flight
+	 * @param maxOperations
+	 *            the maximum number of mutations in one write
+	 */
+	public ConfigWriteQueue(final String configName, final ThreadPool threadPool, final Executor executor, final TimeValue window,
+			final int maxOperations) {
+		this.configName = configName;
+		this.threadPool = threadPool;
+		this.executor = executor;
+		this.window = window;
+		this.maxOperations = maxOperations;
+	}
+
+	/** reads the configuration from the index */
+	protected abstract void load(ActionListener<ConfigDocument> listener);
+
+	/** writes the configuration if it still has the given version, then propagates it */
+	protected abstract void write(BytesReference source, long version, ActionListener<IndexResponse> listener);
+
+	/**
+	 * Queues a mutation. If expectedVersion is not {@link Versions#MATCH_ANY}
+	 * the mutation is answered with a conflict unless it is the first write to
+	 * a document of that version.
+	 */
+	public void submit(final ConfigMutation mutation, final long expectedVersion, final Callback callback) {
+		List<Entry> batch = null;
+
+		synchronized (this) {
+			pending.add(new Entry(mutation, expectedVersion, callback));
+
+			if (!flushing) {
+				if (window.millis() <= 0 || pending.size() >= maxOperations) {
+					batch = nextBatch();
+				} else if (!scheduled) {
+					scheduled = true;
+					threadPool.schedule(window, ThreadPool.Names.SAME, this::flushScheduled);
+				}
+			}
+		}
+
+		if (batch != null) {
+			execute(batch);
+		}
+	}
+
+	private void flushScheduled() {
+		final List<Entry> batch;
+
+		synchronized (this) {
+			scheduled = false;
+			if (flushing || pending.isEmpty()) {
+				return;
+			}
+			batch = nextBatch();
+		}
+
+		execute(batch);
+	}
+
+	/** must be called while holding the lock */
+	private List<Entry> nextBatch() {
+		flushing = true;
+		final List<Entry> batch = new ArrayList<>(Math.min(pending.size(), maxOperations));
+		while (!pending.isEmpty() && batch.size() < maxOperations) {
+			batch.add(pending.poll());
+		}
+		return batch;
+	}
+
+	private void completed() {
+		final List<Entry> batch;
+
+		synchronized (this) {
+			flushing = false;
+			if (pending.isEmpty()) {
+				return;
+			}
+			// these have already waited for the previous write
+			batch = nextBatch();
+		}
+
+		execute(batch);
+	}
+
+	private void execute(final List<Entry> batch) {
+		executor.execute(new AbstractRunnable() {
+
+			@Override
+			protected void doRun() throws Exception {
+				apply(batch, 0);
+			}
+
+			@Override
+			public void onFailure(final Exception e) {
+				fail(batch, e);
+			}
+		});
+	}
+
+	private void apply(final List<Entry> batch, final int attempt) {
+		load(new ActionListener<ConfigDocument>() {
+
+			@Override
+			public void onResponse(final ConfigDocument document) {
+				final Map<String, Object> config = document.copyStructuredMap();
+				boolean modified = false;
+
+				try {
+					for (final Entry entry : batch) {
+						if (entry.expectedVersion != Versions.MATCH_ANY && (modified || entry.expectedVersion != document.getVersion())) {
+							entry.result = ConfigMutation.Result.respond(RestStatus.CONFLICT,
+									configName + " has been modified concurrently, reload and try again.");
+							continue;
+						}
+						entry.result = entry.mutation.apply(config);
+						modified |= entry.result.isWrite();
+					}
+				} catch (final Exception e) {
+					fail(batch, e);
+					return;
+				}
+
+				if (!modified) {
+					respond(batch, document.getVersion(), document.getVersion());
+					return;
+				}
+
+				if (log.isDebugEnabled()) {
+					log.debug("Writing {} mutations of {} at once", batch.size(), configName);
+				}
+
+				write(Utils.convertStructuredMapToBytes(config), document.getVersion(), new ActionListener<IndexResponse>() {
+
+					@Override
+					public void onResponse(final IndexResponse response) {
+						respond(batch, document.getVersion(), response.getVersion());
+					}
+
+					@Override
+					public void onFailure(final Exception e) {
+						if (ExceptionsHelper.unwrapCause(e) instanceof VersionConflictEngineException && attempt < AbstractApiAction.MAX_CONFLICT_RETRIES) {
+							if (log.isDebugEnabled()) {
+								log.debug("{} has been modified concurrently, applying {} mutations again", configName, batch.size());
+							}
+							apply(batch, attempt + 1);
+						} else {
+							fail(batch, e);
+						}
+					}
+				});
+			}
+
+			@Override
+			public void onFailure(final Exception e) {
+				fail(batch, e);
+			}
+		});
+	}
+
+	private void respond(final List<Entry> batch, final long readVersion, final long writtenVersion) {
+		try {
+			for (final Entry entry : batch) {
+				entry.callback.onResult(entry.result, entry.result.isWrite() ? writtenVersion : readVersion);
+			}
+		} finally {
+			completed();
+		}
+	}
+
+	private void fail(final List<Entry> batch, final Exception e) {
+		try {
+			for (final Entry entry : batch) {
+				entry.callback.onFailure(e);
+			}
+		} finally {
+			completed();
+		}
+	}
+}
@@ -23,5 +23,6 @@ public enum Endpoint {
 	ROLESMAPPING,
 	INTERNALUSERS,
 	SYSTEMINFO,
-	PERMISSIONSINFO;
+	PERMISSIONSINFO,
+	WATCH;
 }
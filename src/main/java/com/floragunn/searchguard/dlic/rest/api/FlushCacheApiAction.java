@@ -13,25 +13,22 @@
  */
 package com.floragunn.searchguard.dlic.rest.api;
 
+import java.io.IOException;
 import java.nio.file.Path;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.Semaphore;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Executor;
 
 import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.client.Client;
 import org.elasticsearch.cluster.service.ClusterService;
 import org.elasticsearch.common.bytes.BytesReference;
-import org.elasticsearch.common.collect.Tuple;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.settings.Settings.Builder;
+import org.elasticsearch.rest.RestChannel;
 import org.elasticsearch.rest.RestController;
 import org.elasticsearch.rest.RestRequest;
 import org.elasticsearch.rest.RestRequest.Method;
 import org.elasticsearch.threadpool.ThreadPool;
-import org.elasticsearch.rest.RestResponse;
 
 import com.floragunn.searchguard.action.configupdate.ConfigUpdateAction;
 import com.floragunn.searchguard.action.configupdate.ConfigUpdateRequest;
@@ -49,8 +46,9 @@ public class FlushCacheApiAction extends AbstractApiAction {
 	@Inject
 	public FlushCacheApiAction(final Settings settings, final Path configPath, final RestController controller, final Client client,
 			final AdminDNs adminDNs, final IndexBaseConfigurationRepository cl, final ClusterService cs,
-            final PrincipalExtractor principalExtractor, final PrivilegesEvaluator evaluator, ThreadPool threadPool, AuditLog auditLog) {
-		super(settings, configPath, controller, client, adminDNs, cl, cs, principalExtractor, evaluator, threadPool, auditLog);
+            final PrincipalExtractor principalExtractor, final PrivilegesEvaluator evaluator, ThreadPool threadPool, AuditLog auditLog, Executor managementExecutor,
+            final RestApiPrivilegesEvaluator restApiPrivilegesEvaluator, final ConfigIndexState configIndexState) {
+		super(settings, configPath, controller, client, adminDNs, cl, cs, principalExtractor, evaluator, threadPool, auditLog, managementExecutor, restApiPrivilegesEvaluator, configIndexState);
 		controller.registerHandler(Method.DELETE, "/_searchguard/api/cache", this);
 		controller.registerHandler(Method.GET, "/_searchguard/api/cache", this);
 		controller.registerHandler(Method.PUT, "/_searchguard/api/cache", this);
@@ -63,11 +61,8 @@ public class FlushCacheApiAction extends AbstractApiAction {
 	}
 
 	@Override
-	protected Tuple<String[], RestResponse> handleDelete(RestRequest request, Client client, Builder additionalSettingsBuilder)
-			throws Throwable {
-
-		final Semaphore sem = new Semaphore(0);
-		final List<Throwable> exception = new ArrayList<Throwable>(1);
+	protected void handleDelete(final RestChannel channel, RestRequest request, Client client, Builder additionalSettingsBuilder)
+			throws IOException {
 
 		client.execute(
 				ConfigUpdateAction.INSTANCE,
@@ -76,51 +71,38 @@ public class FlushCacheApiAction extends AbstractApiAction {
 
 					@Override
 					public void onResponse(ConfigUpdateResponse response) {
-						sem.release();
 						if (logger.isDebugEnabled()) {
 							logger.debug("cache flushed successfully");
 						}
+						successResponse(channel, "Cache flushed successfully.");
 					}
 
 					@Override
 					public void onFailure(Exception e) {
-						sem.release();
-						exception.add(e);
 						logger.error("Cannot flush cache due to {}", e.toString(), e);
+						internalErrorResponse(channel, "Cannot flush cache due to "+ e.getMessage());
 					}
 
 				}
 		);
-
-		if (!sem.tryAcquire(30, TimeUnit.SECONDS)) {
-			logger.error("Cannot flush cache due to timeout");
-			return internalErrorResponse("Cannot flush cache due to timeout");
-		}
-
-		if (exception.size() > 0) {
-			logger.error("Cannot flush cache due to", exception.get(0));
-			return internalErrorResponse("Cannot flush cache due to "+ exception.get(0).getMessage());
-		}		
-		
-		return successResponse("Cache flushed successfully.", new String[0]);
 	}
 
 	@Override
-	protected Tuple<String[], RestResponse> handlePost(final RestRequest request, final Client client,
-			final Settings.Builder additionalSettings) throws Throwable {
-		return notImplemented(Method.POST);
+	protected void handlePost(final RestChannel channel, final RestRequest request, final Client client,
+			final Settings.Builder additionalSettings) throws IOException {
+		notImplemented(channel, Method.POST);
 	}
 
 	@Override
-	protected Tuple<String[], RestResponse> handleGet(final RestRequest request, final Client client,
-			final Settings.Builder additionalSettings) throws Throwable {
-		return notImplemented(Method.GET);
+	protected void handleGet(final RestChannel channel, final RestRequest request, final Client client,
+			final Settings.Builder additionalSettings) throws IOException {
+		notImplemented(channel, Method.GET);
 	}
 
 	@Override
-	protected Tuple<String[], RestResponse> handlePut(final RestRequest request, final Client client,
-			final Settings.Builder additionalSettings) throws Throwable {
-		return notImplemented(Method.PUT);
+	protected void handlePut(final RestChannel channel, final RestRequest request, final Client client,
+			final Settings.Builder additionalSettings) throws IOException {
+		notImplemented(channel, Method.PUT);
 	}
 
 	@Override
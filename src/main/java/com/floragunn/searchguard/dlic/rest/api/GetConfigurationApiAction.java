@@ -15,19 +15,20 @@
 package com.floragunn.searchguard.dlic.rest.api;
 
 
+import java.io.IOException;
 import java.nio.file.Path;
+import java.util.concurrent.Executor;
 
 import org.elasticsearch.client.Client;
 import org.elasticsearch.cluster.service.ClusterService;
 import org.elasticsearch.common.bytes.BytesReference;
-import org.elasticsearch.common.collect.Tuple;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.rest.BytesRestResponse;
+import org.elasticsearch.rest.RestChannel;
 import org.elasticsearch.rest.RestController;
 import org.elasticsearch.rest.RestRequest;
 import org.elasticsearch.rest.RestRequest.Method;
-import org.elasticsearch.rest.RestResponse;
 import org.elasticsearch.rest.RestStatus;
 import org.elasticsearch.threadpool.ThreadPool;
 
@@ -50,8 +51,9 @@ public class GetConfigurationApiAction extends AbstractApiAction {
 	@Inject
 	public GetConfigurationApiAction(final Settings settings, final Path configPath, final RestController controller, final Client client,
 			final AdminDNs adminDNs, final IndexBaseConfigurationRepository cl, final ClusterService cs,
-            final PrincipalExtractor principalExtractor, final PrivilegesEvaluator evaluator, ThreadPool threadPool, AuditLog auditLog) {
-		super(settings, configPath, controller, client, adminDNs, cl, cs, principalExtractor, evaluator, threadPool, auditLog);
+            final PrincipalExtractor principalExtractor, final PrivilegesEvaluator evaluator, ThreadPool threadPool, AuditLog auditLog, Executor managementExecutor,
+            final RestApiPrivilegesEvaluator restApiPrivilegesEvaluator, final ConfigIndexState configIndexState) {
+		super(settings, configPath, controller, client, adminDNs, cl, cs, principalExtractor, evaluator, threadPool, auditLog, managementExecutor, restApiPrivilegesEvaluator, configIndexState);
 		controller.registerHandler(Method.GET, "/_searchguard/api/configuration/{configname}", this);
 	}
 
@@ -61,22 +63,22 @@ public class GetConfigurationApiAction extends AbstractApiAction {
 	}
 
 	@Override
-	protected Tuple<String[], RestResponse> handleGet(RestRequest request, Client client,
-			final Settings.Builder additionalSettingsBuilder) throws Throwable {
+	protected void handleGet(final RestChannel channel, RestRequest request, Client client,
+			final Settings.Builder additionalSettingsBuilder) throws IOException {
 		
 		final String configname = request.param("configname");
 
 		if (configname == null || configname.length() == 0
 				|| !ConfigConstants.CONFIG_NAMES.contains(configname)) {
-			return badRequestResponse("No configuration name given, must be one of "
+			badRequestResponse(channel, "No configuration name given, must be one of "
 					+ Joiner.on(",").join(ConfigConstants.CONFIG_NAMES));
+			return;
 
 		}
 
 		final Settings config = loadAsSettings(configname);
 		
-		return new Tuple<String[], RestResponse>(new String[0],
-				new BytesRestResponse(RestStatus.OK, convertToJson(config)));
+		channel.sendResponse(new BytesRestResponse(RestStatus.OK, convertToJson(config)));
 	}
 
 	@Override
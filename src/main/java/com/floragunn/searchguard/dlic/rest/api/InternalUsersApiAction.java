@@ -14,31 +14,31 @@
 
 package com.floragunn.searchguard.dlic.rest.api;
 
+import java.io.IOException;
 import java.nio.file.Path;
-import java.security.SecureRandom;
-import java.util.Arrays;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
-import java.util.Objects;
-import java.util.stream.Collectors;
+import java.util.concurrent.Executor;
 
-import org.bouncycastle.crypto.generators.OpenBSDBCrypt;
+import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.client.Client;
 import org.elasticsearch.cluster.service.ClusterService;
 import org.elasticsearch.common.bytes.BytesReference;
-import org.elasticsearch.common.collect.Tuple;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.rest.RestChannel;
 import org.elasticsearch.rest.RestController;
 import org.elasticsearch.rest.RestRequest;
 import org.elasticsearch.rest.RestRequest.Method;
+import org.elasticsearch.rest.RestStatus;
 import org.elasticsearch.threadpool.ThreadPool;
-import org.elasticsearch.rest.RestResponse;
 
 import com.floragunn.searchguard.auditlog.AuditLog;
 import com.floragunn.searchguard.configuration.AdminDNs;
 import com.floragunn.searchguard.configuration.IndexBaseConfigurationRepository;
 import com.floragunn.searchguard.configuration.PrivilegesEvaluator;
+import com.floragunn.searchguard.dlic.rest.support.PasswordHashingService;
 import com.floragunn.searchguard.dlic.rest.support.Utils;
 import com.floragunn.searchguard.dlic.rest.validation.AbstractConfigurationValidator;
 import com.floragunn.searchguard.dlic.rest.validation.InternalUsersValidator;
@@ -47,11 +47,23 @@ import com.floragunn.searchguard.support.ConfigConstants;
 
 public class InternalUsersApiAction extends AbstractApiAction {
 
+	/**
+	 * Keeps the stored hash if the password matches it, so re-sending an
+	 * unchanged password leaves the user unchanged. Costs one bcrypt check
+	 * per password, hence only on request.
+	 */
+	static final String KEEP_UNCHANGED_PASSWORD_PARAM = "keep_unchanged_password";
+
+	private final PasswordHashingService passwordHashingService;
+
 	@Inject
 	public InternalUsersApiAction(final Settings settings, final Path configPath, final RestController controller, final Client client,
 			final AdminDNs adminDNs, final IndexBaseConfigurationRepository cl, final ClusterService cs,
-            final PrincipalExtractor principalExtractor, final PrivilegesEvaluator evaluator, ThreadPool threadPool, AuditLog auditLog) {
-		super(settings, configPath, controller, client, adminDNs, cl, cs, principalExtractor, evaluator, threadPool, auditLog);
+            final PrincipalExtractor principalExtractor, final PrivilegesEvaluator evaluator, ThreadPool threadPool, AuditLog auditLog, Executor managementExecutor,
+            final RestApiPrivilegesEvaluator restApiPrivilegesEvaluator, final ConfigIndexState configIndexState,
+            final PasswordHashingService passwordHashingService) {
+		super(settings, configPath, controller, client, adminDNs, cl, cs, principalExtractor, evaluator, threadPool, auditLog, managementExecutor, restApiPrivilegesEvaluator, configIndexState);
+		this.passwordHashingService = passwordHashingService;
 
 		// legacy mapping for backwards compatibility
 		// TODO: remove in SG7
@@ -65,6 +77,10 @@ public class InternalUsersApiAction extends AbstractApiAction {
 		controller.registerHandler(Method.GET, "/_searchguard/api/internalusers/", this);
 		controller.registerHandler(Method.DELETE, "/_searchguard/api/internalusers/{name}", this);
 		controller.registerHandler(Method.PUT, "/_searchguard/api/internalusers/{name}", this);
+		controller.registerHandler(Method.POST, "/_searchguard/api/internalusers/" + BULK_ENDPOINT, this);
+		controller.registerHandler(Method.POST, "/_searchguard/api/internalusers/" + PATCH_ENDPOINT, this);
+		controller.registerHandler(Method.POST, "/_searchguard/api/internalusers/{name}/" + PATCH_ENDPOINT, this);
+		controller.registerHandler(Method.POST, "/_searchguard/api/internalusers/" + MGET_ENDPOINT, this);
 
 	}
 
@@ -72,78 +88,210 @@ public class InternalUsersApiAction extends AbstractApiAction {
 	protected Endpoint getEndpoint() {
 		return Endpoint.INTERNALUSERS;
 	}
+
+	@Override
+	protected boolean supportsRoleFilter() {
+		return true;
+	}
 	
 	@Override
-	protected Tuple<String[], RestResponse> handlePut(final RestRequest request, final Client client,
-			final Settings.Builder additionalSettingsBuilder) throws Throwable {
+	protected void handlePut(final RestChannel channel, final RestRequest request, final Client client,
+			final Settings.Builder additionalSettingsBuilder) throws IOException {
 		
 		final String username = request.param("name");
 		
 		if (username == null || username.length() == 0) {
-			return badRequestResponse("No " + getResourceName() + " specified");
+			badRequestResponse(channel, "No " + getResourceName() + " specified");
+			return;
 		}
 
-		final Settings configurationSettings = loadAsSettings(getConfigName());
-				
-		// check if resource is writeable
-		Boolean readOnly = configurationSettings.getAsBoolean(username+ "." + ConfigConstants.CONFIGKEY_READONLY, Boolean.FALSE);
-		if (readOnly) {
-			return forbidden("Resource '"+ username +"' is read-only.");
+		if (isReservedName(username)) {
+			badRequestResponse(channel, reservedNameMessage(username));
+			return;
 		}
 
 		// if password is set, it takes precedence over hash
 		String plainTextPassword = additionalSettingsBuilder.get("password");
 		if (plainTextPassword != null && plainTextPassword.length() > 0) {
 			additionalSettingsBuilder.remove("password");
-			additionalSettingsBuilder.put("hash", hash(plainTextPassword.toCharArray()));
+			final char[] password = plainTextPassword.toCharArray();
+			if (request.paramAsBoolean(KEEP_UNCHANGED_PASSWORD_PARAM, false)) {
+				// check against the hash in the index, not the propagated copy
+				loadVersioned(client, getConfigName(), new OnSucessActionListener<ConfigDocument>(channel) {
+
+					@Override
+					public void onResponse(ConfigDocument document) {
+						hashAndPutUser(channel, request, client, username, password, storedHash(document.getStructuredMap(), username),
+								additionalSettingsBuilder);
+					}
+				});
+			} else {
+				hashAndPutUser(channel, request, client, username, password, null, additionalSettingsBuilder);
+			}
+			return;
 		}
-				
-		// check if user exists
-		final Settings.Builder internaluser = load(ConfigConstants.CONFIGNAME_INTERNAL_USERS);		
-		final Map<String, Object> config = Utils.convertJsonToxToStructuredMap(internaluser.build()); 
 
-		boolean userExisted = config.containsKey(username);
+		putUser(channel, request, client, username, additionalSettingsBuilder);
+	}
 
-		// when updating an existing user password hash can be blank, which means no changes
-		
-		// sanity checks, hash is mandatory for newly created users
-		if(!userExisted && additionalSettingsBuilder.get("hash") == null) {
-			return badRequestResponse("Please specify either 'hash' or 'password' when creating a new internal user");		
-		}
+	private void hashAndPutUser(final RestChannel channel, final RestRequest request, final Client client, final String username,
+			final char[] password, final String existingHash, final Settings.Builder additionalSettingsBuilder) {
+		// bcrypt is expensive, hash on the bounded hashing executor and continue from there.
+		// On request an unchanged password keeps its hash, so the user stays unchanged
+		passwordHashingService.hash(password, existingHash, new OnSucessActionListener<String>(channel) {
 
-		// for existing users, hash is optional
-		if(userExisted && additionalSettingsBuilder.get("hash") == null) {
-			// sanity check, this should usually not happen
-			@SuppressWarnings("unchecked")
-			Map<String, String> existingUserSettings = (Map<String, String>)config.get(username);
-			if (!existingUserSettings.containsKey("hash")) {
-				return internalErrorResponse("Existing user " + username+" has no password, and no new password or hash was specified");
+			@Override
+			public void onResponse(String hash) {
+				additionalSettingsBuilder.put("hash", hash);
+				putUser(channel, request, client, username, additionalSettingsBuilder);
 			}
-			additionalSettingsBuilder.put("hash", (String) existingUserSettings.get("hash"));
-		}
+		});
+	}
 
-		config.remove(username);
+	/** the hash of the user in the structured configuration, null if there is none */
+	private static String storedHash(final Map<String, Object> config, final String username) {
+		final Object user = config.get(username);
+		final Object hash = user instanceof Map ? ((Map<?, ?>) user).get("hash") : null;
+		return hash instanceof String ? (String) hash : null;
+	}
 
-		// checks complete, create or update the user
-		config.put(username, Utils.convertJsonToxToStructuredMap(additionalSettingsBuilder.build()));
-		
-		save(client, request, ConfigConstants.CONFIGNAME_INTERNAL_USERS, Utils.convertStructuredMapToBytes(config));
+	private void putUser(final RestChannel channel, final RestRequest request, final Client client, final String username,
+			final Settings.Builder additionalSettingsBuilder) {
+
+		final Settings userSettings = additionalSettingsBuilder.build();
+
+		mutate(channel, request, client, config -> {
+
+			// check if resource is writeable on the document being written
+			if (isReadOnly(config, username)) {
+				return ConfigMutation.Result.respond(RestStatus.FORBIDDEN, "Resource '" + username + "' is read-only.");
+			}
+
+			// check if user exists
+			final Settings.Builder user = Settings.builder().put(userSettings);
+
+			final boolean userExisted = config.containsKey(username);
+
+			// when updating an existing user password hash can be blank, which means no changes
+
+			// sanity checks, hash is mandatory for newly created users
+			if(!userExisted && user.get("hash") == null) {
+				return ConfigMutation.Result.respond(RestStatus.BAD_REQUEST, "Please specify either 'hash' or 'password' when creating a new internal user");
+			}
+
+			// for existing users, hash is optional
+			if(userExisted && user.get("hash") == null) {
+				// sanity check, this should usually not happen
+				@SuppressWarnings("unchecked")
+				Map<String, String> existingUserSettings = (Map<String, String>)config.get(username);
+				if (!existingUserSettings.containsKey("hash")) {
+					return ConfigMutation.Result.respond(RestStatus.INTERNAL_SERVER_ERROR, "Existing user " + username+" has no password, and no new password or hash was specified");
+				}
+				user.put("hash", (String) existingUserSettings.get("hash"));
+			}
+
+			final Map<String, Object> userMap = Utils.convertJsonToxToStructuredMap(user.build());
+
+			// a kept hash only leaves the user unchanged if it is still the
+			// stored one. If the user has been written since the password was
+			// checked, the kept hash is written as the hash of the new password.
+			if (isUnchanged(config.get(username), userMap)) {
+				return ConfigMutation.Result.unchanged("'" + username + "' unchanged");
+			}
+
+			config.remove(username);
+
+			// checks complete, create or update the user
+			config.put(username, userMap);
+
+			if (userExisted) {
+				return ConfigMutation.Result.write(RestStatus.OK, "'" + username + "' updated");
+			} else {
+				return ConfigMutation.Result.write(RestStatus.CREATED, "'" + username + "' created");
+			}
+		});
+	}
+
+	@Override
+	protected void prepareBulkItems(final RestRequest request, final Client client, final List<BulkItem> items,
+			final ActionListener<List<BulkItem>> listener) {
+		if (request.paramAsBoolean(KEEP_UNCHANGED_PASSWORD_PARAM, false)) {
+			// check against the hashes in the index, not the propagated copy
+			loadVersioned(client, getConfigName(), new ActionListener<ConfigDocument>() {
+
+				@Override
+				public void onResponse(ConfigDocument document) {
+					hashBulkPasswords(items, document.getStructuredMap(), listener);
+				}
 
-		if (userExisted) {
-			return successResponse("'" + username + "' updated", ConfigConstants.CONFIGNAME_INTERNAL_USERS);
+				@Override
+				public void onFailure(Exception e) {
+					listener.onFailure(e);
+				}
+			});
 		} else {
-			return createdResponse("'" + username + "' created", ConfigConstants.CONFIGNAME_INTERNAL_USERS);
+			hashBulkPasswords(items, null, listener);
 		}
+	}
+
+	/**
+	 * @param existing
+	 *            the configuration whose hashes are kept if the password
+	 *            matches, null to hash all passwords
+	 */
+	private void hashBulkPasswords(final List<BulkItem> items, final Map<String, Object> existing, final ActionListener<List<BulkItem>> listener) {
+		final boolean keepUnchangedPasswords = existing != null;
+		final List<BulkItem> withPassword = new ArrayList<>();
+		final List<char[]> passwords = new ArrayList<>();
+		final List<String> existingHashes = keepUnchangedPasswords ? new ArrayList<>() : null;
 
+		for (final BulkItem item : items) {
+			if (item.isFailed() || item.getSettings() == null) {
+				continue;
+			}
+			final String plainTextPassword = item.getSettings().get("password");
+			item.getSettings().remove("password");
+			if (plainTextPassword != null && plainTextPassword.length() > 0) {
+				withPassword.add(item);
+				passwords.add(plainTextPassword.toCharArray());
+				if (keepUnchangedPasswords) {
+					existingHashes.add(storedHash(existing, item.getId()));
+				}
+			}
+		}
+
+		// hash all passwords of the request in parallel
+		passwordHashingService.hashAll(passwords, existingHashes, new ActionListener<List<String>>() {
+
+			@Override
+			public void onResponse(List<String> hashes) {
+				for (int i = 0; i < hashes.size(); i++) {
+					withPassword.get(i).getSettings().put("hash", hashes.get(i));
+				}
+				listener.onResponse(items);
+			}
+
+			@Override
+			public void onFailure(Exception e) {
+				listener.onFailure(e);
+			}
+		});
 	}
 
-	public static String hash(final char[] clearTextPassword) {
-	    final byte[] salt = new byte[16];
-        new SecureRandom().nextBytes(salt);
-        final String hash = OpenBSDBCrypt.generate((Objects.requireNonNull(clearTextPassword)), salt, 12);
-        Arrays.fill(salt, (byte)0);
-        Arrays.fill(clearTextPassword, '\0');
-        return hash;
+	@Override
+	protected void prepareBulkItem(final BulkItem item, final Map<String, Object> existingUser) {
+		if (item.getSettings().get("hash") != null) {
+			return;
+		}
+
+		// same rules as for PUT, hash is mandatory for new users only
+		if (existingUser == null) {
+			item.fail(RestStatus.BAD_REQUEST, "Please specify either 'hash' or 'password' when creating a new internal user");
+		} else if (!existingUser.containsKey("hash")) {
+			item.fail(RestStatus.INTERNAL_SERVER_ERROR, "Existing user " + item.getId() + " has no password, and no new password or hash was specified");
+		} else {
+			item.getSettings().put("hash", (String) existingUser.get("hash"));
+		}
 	}
 
 	@Override
@@ -160,4 +308,10 @@ public class InternalUsersApiAction extends AbstractApiAction {
 	protected AbstractConfigurationValidator getValidator(Method method, BytesReference ref) {
 		return new InternalUsersValidator(method, ref);
 	}
+
+	@Override
+	protected void consumeParameters(final RestRequest request) {
+		super.consumeParameters(request);
+		request.param(KEEP_UNCHANGED_PASSWORD_PARAM);
+	}
 }
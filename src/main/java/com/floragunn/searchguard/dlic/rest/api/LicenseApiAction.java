@@ -15,17 +15,14 @@ package com.floragunn.searchguard.dlic.rest.api;
 
 import java.io.IOException;
 import java.nio.file.Path;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.Semaphore;
-import java.util.concurrent.TimeUnit;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
 
-import org.elasticsearch.ElasticsearchException;
 import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.client.Client;
 import org.elasticsearch.cluster.service.ClusterService;
 import org.elasticsearch.common.bytes.BytesReference;
-import org.elasticsearch.common.collect.Tuple;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.settings.Settings.Builder;
 import org.elasticsearch.common.xcontent.ToXContent;
@@ -34,10 +31,10 @@ import org.elasticsearch.common.xcontent.XContentFactory;
 import org.elasticsearch.common.xcontent.XContentHelper;
 import org.elasticsearch.common.xcontent.XContentType;
 import org.elasticsearch.rest.BytesRestResponse;
+import org.elasticsearch.rest.RestChannel;
 import org.elasticsearch.rest.RestController;
 import org.elasticsearch.rest.RestRequest;
 import org.elasticsearch.rest.RestRequest.Method;
-import org.elasticsearch.rest.RestResponse;
 import org.elasticsearch.rest.RestStatus;
 import org.elasticsearch.threadpool.ThreadPool;
 
@@ -61,8 +58,9 @@ public class LicenseApiAction extends AbstractApiAction {
 	
 	protected LicenseApiAction(Settings settings, Path configPath, RestController controller, Client client, AdminDNs adminDNs,
 			IndexBaseConfigurationRepository cl, ClusterService cs, PrincipalExtractor principalExtractor, 
-			final PrivilegesEvaluator evaluator, ThreadPool threadPool, AuditLog auditLog) {
-		super(settings, configPath, controller, client, adminDNs, cl, cs, principalExtractor, evaluator, threadPool, auditLog);		
+			final PrivilegesEvaluator evaluator, ThreadPool threadPool, AuditLog auditLog, Executor managementExecutor,
+            final RestApiPrivilegesEvaluator restApiPrivilegesEvaluator, final ConfigIndexState configIndexState) {
+		super(settings, configPath, controller, client, adminDNs, cl, cs, principalExtractor, evaluator, threadPool, auditLog, managementExecutor, restApiPrivilegesEvaluator, configIndexState);		
 		controller.registerHandler(Method.DELETE, "/_searchguard/api/license", this);
 		controller.registerHandler(Method.GET, "/_searchguard/api/license", this);
 		controller.registerHandler(Method.PUT, "/_searchguard/api/license", this);
@@ -76,69 +74,49 @@ public class LicenseApiAction extends AbstractApiAction {
 	}
 
 	@Override
-	protected Tuple<String[], RestResponse> handleGet(RestRequest request, Client client, Builder additionalSettings) throws Throwable {
-		
-		final Semaphore sem = new Semaphore(0);
-		final List<Throwable> exception = new ArrayList<Throwable>(1);
-		final XContentBuilder builder = XContentFactory.jsonBuilder().prettyPrint();
+	protected void consumeParameters(final RestRequest request) {
+		// no resources to query
+	}
+
+	@Override
+	protected void handleGet(final RestChannel channel, RestRequest request, Client client, Builder additionalSettings) throws IOException {
 		
 		client.execute(LicenseInfoAction.INSTANCE, new LicenseInfoRequest(), new ActionListener<LicenseInfoResponse>() {
 
 			@Override
 			public void onFailure(final Exception e) {
-				try {
-					exception.add(e);
-					logger.error("Cannot fetch license information due to", e);							
-				} finally {
-					sem.release();
-				}
+				logger.error("Unable to fetch license due to", e);
+				internalErrorResponse(channel, "Unable to fetch license: " + e.getMessage());
 			}
 
 			@Override
 			public void onResponse(final LicenseInfoResponse ur) {				
 				try {					
+					final XContentBuilder builder = XContentFactory.jsonBuilder().prettyPrint();
 		            builder.startObject();
 		            ur.toXContent(builder, ToXContent.EMPTY_PARAMS);
 		            builder.endObject();
 					if (log.isDebugEnabled()) {
 						log.debug("Successfully fetched license " + ur.toString());
 					}					
+					channel.sendResponse(new BytesRestResponse(RestStatus.OK, builder));
 				} catch (IOException e) {
-					exception.add(e);
 					logger.error("Cannot fetch convert license to XContent due to", e);		
-				} finally {
-					sem.release();
+					internalErrorResponse(channel, "Unable to fetch license: " + e.getMessage());
 				}
 			}
 		});
-		
-		try {
-			if (!sem.tryAcquire(2, TimeUnit.MINUTES)) {
-				logger.error("Cannot fetch config due to timeout");
-				throw new ElasticsearchException("Timeout fetching license.");
-			}
-		} catch (final InterruptedException e) {
-			Thread.currentThread().interrupt();
-		}
-
-		if (exception.size() != 0) {
-		    request.params().clear();
-		    logger.error("Unable to fetch license due to", exception.get(0));
-		    return internalErrorResponse("Unable to fetch license: " + exception.get(0).getMessage());
-		}
-			
-		return new Tuple<String[], RestResponse>(new String[0],
-				new BytesRestResponse(RestStatus.OK, builder));
 	}
 	
 	@Override
-	protected Tuple<String[], RestResponse> handlePut(final RestRequest request, final Client client,
-			final Settings.Builder licenseBuilder) throws Throwable {
+	protected void handlePut(final RestChannel channel, final RestRequest request, final Client client,
+			final Settings.Builder licenseBuilder) throws IOException {
 		
 		String licenseString = licenseBuilder.get("sg_license");
 		
 		if (licenseString == null || licenseString.length() == 0) {
-			return badRequestResponse("License must not be null.");
+			badRequestResponse(channel, "License must not be null.");
+			return;
 		}
 		
 		// try to decode the license String as base 64, armored PGP encoded String
@@ -148,42 +126,55 @@ public class LicenseApiAction extends AbstractApiAction {
 			plaintextLicense = LicenseHelper.validateLicense(licenseString);					
 		} catch (Exception e) {
 			log.error("Could not decode license {} due to", licenseString, e);
-			return badRequestResponse("License could not be decoded due to: " + e.getMessage());
+			badRequestResponse(channel, "License could not be decoded due to: " + e.getMessage());
+			return;
 		}
 		
 		SearchGuardLicense license = new SearchGuardLicense(XContentHelper.convertToMap(XContentType.JSON.xContent(), plaintextLicense, true), cs);
 		
 		// check if license is valid at all, honor unsupported switch in es.yml 
 		if (!license.isValid() && !acceptInvalidLicense) {
-			return badRequestResponse("License invalid due to: " + String.join(",", license.getMsgs()));
+			badRequestResponse(channel, "License invalid due to: " + String.join(",", license.getMsgs()));
+			return;
 		}
 				
-		// load existing configuration into new map
-		final Settings.Builder existing = load(getConfigName());
-		
-		if (log.isTraceEnabled()) {
-			log.trace(existing.build().toString());	
-		}
-		
-		// license already present?		
-		boolean licenseExists = existing.get(CONFIG_LICENSE_KEY) != null;
-		
-		// license is valid, overwrite old value
-		existing.put(CONFIG_LICENSE_KEY, licenseString);
-		
-		save(client, request, getConfigName(), existing);
-		if (licenseExists) {
-			return successResponse("License updated.", getConfigName());
-		} else {
-			// fallback, should not happen since we always have at least a trial license
-			log.warn("License created via REST API.");
-			return createdResponse("License created.", getConfigName());
+		mutate(channel, request, client, config -> {
+
+			if (log.isTraceEnabled()) {
+				log.trace(config.toString());
+			}
+
+			// license already present?
+			final Map<String, Object> dynamic = childMap(childMap(config, "searchguard"), "dynamic");
+			final boolean licenseExists = dynamic.get("license") != null;
+
+			// license is valid, overwrite old value
+			dynamic.put("license", licenseString);
+
+			if (licenseExists) {
+				return ConfigMutation.Result.write(RestStatus.OK, "License updated.");
+			} else {
+				// fallback, should not happen since we always have at least a trial license
+				log.warn("License created via REST API.");
+				return ConfigMutation.Result.write(RestStatus.CREATED, "License created.");
+			}
+		});
+	}
+
+	/** the child map with the given key, created if missing */
+	@SuppressWarnings("unchecked")
+	private static Map<String, Object> childMap(final Map<String, Object> parent, final String key) {
+		Object child = parent.get(key);
+		if (!(child instanceof Map)) {
+			child = new HashMap<String, Object>();
+			parent.put(key, child);
 		}
+		return (Map<String, Object>) child;
 	}
 
-	protected Tuple<String[], RestResponse> handlePost(final RestRequest request, final Client client,
-			final Settings.Builder additionalSettings) throws Throwable {
-		return notImplemented(Method.POST);
+	protected void handlePost(final RestChannel channel, final RestRequest request, final Client client,
+			final Settings.Builder additionalSettings) throws IOException {
+		notImplemented(channel, Method.POST);
 	}
 
 	@Override
@@ -20,12 +20,14 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Executor;
 
 import org.elasticsearch.client.Client;
 import org.elasticsearch.client.node.NodeClient;
 import org.elasticsearch.cluster.service.ClusterService;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.transport.TransportAddress;
+import org.elasticsearch.common.util.concurrent.AbstractRunnable;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.rest.BaseRestHandler;
 import org.elasticsearch.rest.BytesRestResponse;
@@ -51,16 +53,20 @@ public class PermissionsInfoAction extends BaseRestHandler {
 
 	private final RestApiPrivilegesEvaluator restApiPrivilegesEvaluator;
 	private final ThreadPool threadPool;
-	private final PrivilegesEvaluator privilegesEvaluator;
+	private final Executor managementExecutor;
+	// the bounded executors of the REST API, their load is part of the response
+	private final List<BoundedExecutor> executors;
 	
 	protected PermissionsInfoAction(final Settings settings, final Path configPath, final RestController controller, final Client client,
 			final AdminDNs adminDNs, final IndexBaseConfigurationRepository cl, final ClusterService cs,
-			final PrincipalExtractor principalExtractor, final PrivilegesEvaluator privilegesEvaluator, ThreadPool threadPool, AuditLog auditLog) {
+			final PrincipalExtractor principalExtractor, final PrivilegesEvaluator privilegesEvaluator, ThreadPool threadPool, AuditLog auditLog, Executor managementExecutor,
+			final RestApiPrivilegesEvaluator restApiPrivilegesEvaluator, final List<BoundedExecutor> executors) {
 		super(settings);
 		controller.registerHandler(Method.GET, "/_searchguard/api/permissionsinfo", this);
 		this.threadPool = threadPool;
-		this.privilegesEvaluator = privilegesEvaluator;
-		this.restApiPrivilegesEvaluator = new RestApiPrivilegesEvaluator(settings, adminDNs, privilegesEvaluator, principalExtractor, configPath, threadPool);
+		this.managementExecutor = managementExecutor;
+		this.restApiPrivilegesEvaluator = restApiPrivilegesEvaluator;
+		this.executors = executors;
 	}
 
 	@Override
@@ -84,45 +90,70 @@ public class PermissionsInfoAction extends BaseRestHandler {
 
             @Override
             public void accept(RestChannel channel) throws Exception {
-                XContentBuilder builder = channel.newBuilder(); //NOSONAR
-                BytesRestResponse response = null;
-                
-                try {
-
-            		final User user = (User) threadPool.getThreadContext().getTransient(ConfigConstants.SG_USER);
-            		final TransportAddress remoteAddress = (TransportAddress) threadPool.getThreadContext()
-            				.getTransient(ConfigConstants.SG_REMOTE_ADDRESS);
-            		Set<String> userRoles = privilegesEvaluator.mapSgRoles(user, remoteAddress);
-            		Boolean hasApiAccess = restApiPrivilegesEvaluator.currentUserHasRestApiAccess(userRoles);
-            		Map<Endpoint, List<Method>> disabledEndpoints = restApiPrivilegesEvaluator.getDisabledEndpointsForCurrentUser(user.getName(), userRoles);
-
-                    builder.startObject();
-                    builder.field("user", user);
-                    builder.field("user_name", user==null?null:user.getName()); //NOSONAR
-                    builder.field("has_api_access", hasApiAccess);
-                    builder.startObject("disabled_endpoints");
-                    for(Entry<Endpoint, List<Method>>  entry : disabledEndpoints.entrySet()) {
-                    	builder.field(entry.getKey().name(), entry.getValue());
+                managementExecutor.execute(new AbstractRunnable() {
+
+                    @Override
+                    protected void doRun() throws Exception {
+                        sendPermissionsInfo(channel);
                     }
-                    builder.endObject();
-                    builder.endObject();
-                    response = new BytesRestResponse(RestStatus.OK, builder);
-                } catch (final Exception e1) {
-                    builder = channel.newBuilder(); //NOSONAR
-                    builder.startObject();
-                    builder.field("error", e1.toString());
-                    builder.endObject();
-                    response = new BytesRestResponse(RestStatus.INTERNAL_SERVER_ERROR, builder);
-                } finally {
-                    if(builder != null) {
-                        builder.close();
+
+                    @Override
+                    public void onFailure(Exception e) {
+                        channel.sendResponse(new BytesRestResponse(RestStatus.INTERNAL_SERVER_ERROR, e.toString()));
                     }
-                }
 
-                channel.sendResponse(response);
+                    @Override
+                    public void onRejection(Exception e) {
+                        channel.sendResponse(new BytesRestResponse(RestStatus.TOO_MANY_REQUESTS, e.toString()));
+                    }
+                });
             }
         };
 
 	}
 
+	private void sendPermissionsInfo(RestChannel channel) throws IOException {
+		XContentBuilder builder = channel.newBuilder(); //NOSONAR
+		BytesRestResponse response = null;
+		
+		try {
+
+			final User user = (User) threadPool.getThreadContext().getTransient(ConfigConstants.SG_USER);
+			final TransportAddress remoteAddress = (TransportAddress) threadPool.getThreadContext()
+					.getTransient(ConfigConstants.SG_REMOTE_ADDRESS);
+			Set<String> userRoles = restApiPrivilegesEvaluator.mapSgRoles(user, remoteAddress);
+			Boolean hasApiAccess = restApiPrivilegesEvaluator.currentUserHasRestApiAccess(userRoles);
+			Map<Endpoint, Set<Method>> disabledEndpoints = restApiPrivilegesEvaluator.getDisabledEndpointsForCurrentUser(user.getName(), userRoles);
+
+			builder.startObject();
+			builder.field("user", user);
+			builder.field("user_name", user==null?null:user.getName()); //NOSONAR
+			builder.field("has_api_access", hasApiAccess);
+			builder.startObject("disabled_endpoints");
+			for(Entry<Endpoint, Set<Method>>  entry : disabledEndpoints.entrySet()) {
+				builder.field(entry.getKey().name(), entry.getValue());
+			}
+			builder.endObject();
+			builder.startObject("executors");
+			for (final BoundedExecutor executor : executors) {
+				executor.stats(builder);
+			}
+			builder.endObject();
+			builder.endObject();
+			response = new BytesRestResponse(RestStatus.OK, builder);
+		} catch (final Exception e1) {
+			builder = channel.newBuilder(); //NOSONAR
+			builder.startObject();
+			builder.field("error", e1.toString());
+			builder.endObject();
+			response = new BytesRestResponse(RestStatus.INTERNAL_SERVER_ERROR, builder);
+		} finally {
+			if(builder != null) {
+				builder.close();
+			}
+		}
+
+		channel.sendResponse(response);
+	}
+
 }
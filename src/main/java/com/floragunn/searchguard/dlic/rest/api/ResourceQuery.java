@@ -0,0 +1,272 @@
+/*
+ * Copyright 2016-2017 by floragunn GmbH - All rights reserved
+ *
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed here is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * This software is free of charge for non-commercial and academic use.
+ * For commercial use in a production environment you have to obtain a license
+ * from https://floragunn.com
+ *
+ */
+
+package com.floragunn.searchguard.dlic.rest.api;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.elasticsearch.common.Booleans;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.regex.Regex;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.rest.BytesRestResponse;
+import org.elasticsearch.rest.RestChannel;
+import org.elasticsearch.rest.RestRequest;
+import org.elasticsearch.rest.RestStatus;
+
+import com.floragunn.searchguard.support.ConfigConstants;
+
+/**
+ * Paging, sorting and filtering for GET requests on a complete configuration.
+ * Pages are read from the sorted resource names of the document, so a page
+ * costs its size plus the resources skipped by filters, not the size of the
+ * configuration. A prefix filter ("name*") is resolved by binary search.
+ * <p>
+ * Parameters: {@code size}, {@code search_after} (the last name of the
+ * previous page, returned as {@code next}), {@code sort} ({@code name} or
+ * {@code name:desc}), {@code name_filter} (wildcard pattern), {@code role}
+ * (resources whose roles contain it, only for configurations with roles per
+ * resource) and {@code readonly}. The parameters are accepted only on a GET
+ * of the complete configuration.
+ * <p>
+ * With {@code format=ndjson} the page is written as bulk request body, one
+ * index action and one resource per line, which the _bulk endpoint accepts
+ * again. The resources are written one by one from the shared configuration
+ * into the output of the channel, and the name for the next page is returned
+ * in the {@value #SEARCH_AFTER_HEADER} header as long as more resources
+ * follow. Pages hold {@value #NDJSON_DEFAULT_SIZE} resources unless a size
+ * of at most {@value #NDJSON_MAX_SIZE} is requested.
+ */
+final class ResourceQuery {
+
+	static final List<String> PARAMS = Collections.unmodifiableList(Arrays.asList("size", "search_after", "sort", "name_filter", "role", "readonly",
+			"format"));
+
+	static final String SEARCH_AFTER_HEADER = "X-Search-After";
+
+	// an NDJSON page is built in memory, so its size is bounded
+	static final int NDJSON_DEFAULT_SIZE = 1000;
+	static final int NDJSON_MAX_SIZE = 10000;
+
+	private static final String NDJSON_CONTENT_TYPE = "application/x-ndjson";
+
+	private static final byte[] NEWLINE = new byte[] { '\n' };
+
+	/** receives the resources of a page in order */
+	private interface Visitor {
+		void visit(String name, Object resource) throws IOException;
+	}
+
+	private final int size;
+	private final String searchAfter;
+	private final boolean descending;
+	private final String namePattern;
+	// set if the pattern only matches a prefix
+	private final String namePrefix;
+	private final String role;
+	private final Boolean readonly;
+	private final boolean ndjson;
+
+	private ResourceQuery(final int size, final String searchAfter, final boolean descending, final String namePattern, final String role,
+			final Boolean readonly, final boolean ndjson) {
+		this.size = size;
+		this.searchAfter = searchAfter;
+		this.descending = descending;
+		this.namePattern = namePattern;
+		this.namePrefix = namePattern != null && namePattern.indexOf('*') == namePattern.length() - 1
+				? namePattern.substring(0, namePattern.length() - 1) : null;
+		this.role = role;
+		this.readonly = readonly;
+		this.ndjson = ndjson;
+	}
+
+	/** true if the request has one of the parameters of a query */
+	static boolean isRequested(final RestRequest request) {
+		for (final String param : PARAMS) {
+			if (request.hasParam(param)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param roleFilter
+	 *            true if the resources have a list of roles to filter on
+	 * @throws IllegalArgumentException if a parameter is invalid
+	 */
+	static ResourceQuery parse(final RestRequest request, final boolean roleFilter) {
+		final String format = request.param("format", "json");
+		if (!format.equals("json") && !format.equals("ndjson")) {
+			throw new IllegalArgumentException("Unsupported format '" + format + "', must be json or ndjson");
+		}
+		final boolean ndjson = format.equals("ndjson");
+
+		final int size = request.paramAsInt("size", ndjson ? NDJSON_DEFAULT_SIZE : Integer.MAX_VALUE);
+		// an empty page would have no name to continue after
+		if (size < 1) {
+			throw new IllegalArgumentException("size must be at least 1");
+		}
+		if (ndjson && size > NDJSON_MAX_SIZE) {
+			throw new IllegalArgumentException("size must not be greater than " + NDJSON_MAX_SIZE + " for format ndjson");
+		}
+
+		final String sort = request.param("sort", "name");
+		final boolean descending;
+		if (sort.equals("name") || sort.equals("name:asc")) {
+			descending = false;
+		} else if (sort.equals("name:desc")) {
+			descending = true;
+		} else {
+			throw new IllegalArgumentException("Unsupported sort '" + sort + "', must be name, name:asc or name:desc");
+		}
+
+		if (!roleFilter && request.hasParam("role")) {
+			throw new IllegalArgumentException("The resources of this configuration have no roles to filter on");
+		}
+
+		final String readonly = request.param("readonly");
+		return new ResourceQuery(size, emptyToNull(request.param("search_after")), descending, emptyToNull(request.param("name_filter")),
+				emptyToNull(request.param("role")), readonly == null ? null : Booleans.parseBoolean(readonly), ndjson);
+	}
+
+	/** the response with the page of the document in the requested format */
+	BytesRestResponse response(final RestChannel channel, final ConfigDocument document) throws IOException {
+		return ndjson ? ndjson(channel, document) : new BytesRestResponse(RestStatus.OK, page(document));
+	}
+
+	/**
+	 * The page as JSON object, the resources by name and the name to pass as
+	 * search_after for the next page if there is one
+	 */
+	private XContentBuilder page(final ConfigDocument document) throws IOException {
+		final XContentBuilder builder = XContentFactory.jsonBuilder();
+		builder.startObject();
+		builder.startObject("resources");
+		final String next = visit(document, builder::field);
+		builder.endObject();
+		if (next != null) {
+			builder.field("next", next);
+		}
+		builder.endObject();
+		return builder;
+	}
+
+	private BytesRestResponse ndjson(final RestChannel channel, final ConfigDocument document) throws IOException {
+		final BytesStreamOutput out = channel.bytesOutput();
+
+		final String next = visit(document, (name, resource) -> {
+			final XContentBuilder action = XContentFactory.jsonBuilder();
+			action.startObject().startObject(BulkItem.OpType.INDEX.lowercase()).field("_id", name).endObject().endObject();
+			action.bytes().writeTo(out);
+			out.write(NEWLINE);
+
+			final XContentBuilder source = XContentFactory.jsonBuilder();
+			source.value(resource);
+			source.bytes().writeTo(out);
+			out.write(NEWLINE);
+		});
+
+		final BytesRestResponse response = new BytesRestResponse(RestStatus.OK, NDJSON_CONTENT_TYPE, out.bytes());
+		if (next != null) {
+			response.addHeader(SEARCH_AFTER_HEADER, next);
+		}
+		return response;
+	}
+
+	/**
+	 * Passes the matching resources of the page to the visitor, returns the
+	 * name to continue with if more follow.
+	 */
+	private String visit(final ConfigDocument document, final Visitor visitor) throws IOException {
+		final String[] names = document.getSortedNames();
+		final Map<String, Object> resources = document.getStructuredMap();
+
+		int added = 0;
+		String last = null;
+		final int step = descending ? -1 : 1;
+		final int end = end(names);
+		for (int i = start(names); descending ? i > end : i < end; i += step) {
+			final String name = names[i];
+			final Object resource = resources.get(name);
+			if (!matches(name, resource)) {
+				continue;
+			}
+			if (added == size) {
+				return last;
+			}
+			visitor.visit(name, resource);
+			last = name;
+			added++;
+		}
+		return null;
+	}
+
+	/** first index to look at */
+	private int start(final String[] names) {
+		int start = descending ? names.length - 1 : 0;
+		if (searchAfter != null) {
+			final int index = Arrays.binarySearch(names, searchAfter);
+			final int insertion = index >= 0 ? index : -index - 1;
+			start = descending ? insertion - 1 : (index >= 0 ? index + 1 : insertion);
+		}
+		if (namePrefix != null) {
+			start = descending ? Math.min(start, lowerBound(names, namePrefix + Character.MAX_VALUE) - 1)
+					: Math.max(start, lowerBound(names, namePrefix));
+		}
+		return start;
+	}
+
+	/** index behind the last one to look at */
+	private int end(final String[] names) {
+		if (namePrefix != null) {
+			return descending ? lowerBound(names, namePrefix) - 1 : lowerBound(names, namePrefix + Character.MAX_VALUE);
+		}
+		return descending ? -1 : names.length;
+	}
+
+	private static int lowerBound(final String[] names, final String key) {
+		final int index = Arrays.binarySearch(names, key);
+		return index >= 0 ? index : -index - 1;
+	}
+
+	private boolean matches(final String name, final Object resource) {
+		if (namePrefix == null && namePattern != null && !Regex.simpleMatch(namePattern, name)) {
+			return false;
+		}
+		if (role != null) {
+			final Object roles = resource instanceof Map ? ((Map<?, ?>) resource).get("roles") : null;
+			if (!(roles instanceof List) || !((List<?>) roles).contains(role)) {
+				return false;
+			}
+		}
+		if (readonly != null) {
+			final boolean isReadonly = resource instanceof Map
+					&& Boolean.parseBoolean(String.valueOf(((Map<?, ?>) resource).get(ConfigConstants.CONFIGKEY_READONLY)));
+			if (isReadonly != readonly.booleanValue()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static String emptyToNull(final String value) {
+		return value == null || value.isEmpty() ? null : value;
+	}
+}
@@ -15,28 +15,46 @@
 package com.floragunn.searchguard.dlic.rest.api;
 
 import java.io.IOException;
+import java.net.InetAddress;
 import java.nio.file.Path;
 import java.security.cert.X509Certificate;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Objects;
 import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+import javax.net.ssl.SSLSession;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.common.cache.Cache;
+import org.elasticsearch.common.cache.CacheBuilder;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.transport.TransportAddress;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.ThreadContext;
+import org.elasticsearch.http.netty4.Netty4HttpRequest;
 import org.elasticsearch.rest.RestRequest;
 import org.elasticsearch.rest.RestRequest.Method;
 import org.elasticsearch.threadpool.ThreadPool;
 
+import io.netty.handler.ssl.SslHandler;
+
 import com.floragunn.searchguard.configuration.AdminDNs;
+import com.floragunn.searchguard.configuration.IndexBaseConfigurationRepository;
 import com.floragunn.searchguard.configuration.PrivilegesEvaluator;
 import com.floragunn.searchguard.dlic.rest.support.Utils;
 import com.floragunn.searchguard.ssl.transport.PrincipalExtractor;
@@ -45,9 +63,32 @@ import com.floragunn.searchguard.ssl.util.SSLRequestHelper.SSLInfo;
 import com.floragunn.searchguard.support.ConfigConstants;
 import com.floragunn.searchguard.user.User;
 
-// TODO: Make Singleton?
+/**
+ * Evaluates access to the REST API endpoints. One instance is shared by all
+ * handlers of a node.
+ */
 public class RestApiPrivilegesEvaluator {
 
+	/** maximum number of distinct role sets for which the disabled endpoints are cached */
+	private static final int CACHE_SIZE = 1000;
+
+	/** how long the SG roles of a user are reused across requests */
+	private static final TimeValue ROLES_MAPPING_CACHE_TTL = TimeValue.timeValueSeconds(5);
+
+	private static final int ROLES_MAPPING_CACHE_SIZE = 10000;
+
+	/** maximum number of TLS sessions for which the admin certificate check is cached */
+	private static final int ADMIN_CERT_CACHE_SIZE = 1000;
+
+	/**
+	 * how long the admin certificate check of a TLS session is reused, so a
+	 * revoked certificate is not trusted for the whole life of a session
+	 */
+	private static final TimeValue ADMIN_CERT_CACHE_TTL = TimeValue.timeValueSeconds(5);
+
+	// the mapped SG roles of the current request
+	private static final String SG_ROLES_TRANSIENT = "_sg_restapi_sg_roles";
+
 	protected final Logger logger = LogManager.getLogger(this.getClass());
 
 	private final AdminDNs adminDNs;
@@ -57,26 +98,23 @@ public class RestApiPrivilegesEvaluator {
 	private final ThreadPool threadPool;
 	private final Settings settings;
 
-	private final Set<String> allowedRoles = new HashSet<>();
+	// SG roles per user, backend roles and address. Cleared whenever the roles
+	// mapping is reloaded.
+	private final Cache<RolesMappingKey, Set<String>> rolesMappingCache;
 
-	// endpoints per role, read and cached from settings. Changes here require a
-	// node restart, so it's save to cache.
-	private final Map<String, Map<Endpoint, List<Method>>> disabledEndpointsForRoles = new HashMap<>();
+	// result of the admin certificate check per TLS session for a short time.
+	// Clients usually send many requests over one connection.
+	private final Cache<SSLSession, AdminCertDecision> adminCertCache;
 
-	// endpoints per user, evaluated and cached dynamically. Changes here
-	// require a node restart, so it's save to cache.
-	private final Map<String, Map<Endpoint, List<Method>>> disabledEndpointsForUsers = new HashMap<>();
-	
-	// globally disabled endpoints and methods, will always be forbidden
-	Map<Endpoint, List<Method>> globallyDisabledEndpoints = new HashMap<>();
+	// the permissions parsed from the node settings. They are static, changes
+	// require a node restart.
+	private final Permissions permissions;
 
 	// all endpoints and methods, will be returned for users that do not have any access at all
-	Map<Endpoint, List<Method>> allEndpoints = new HashMap<>();
-
-	private final Boolean roleBasedAccessEnabled;
+	Map<Endpoint, Set<Method>> allEndpoints = new EnumMap<>(Endpoint.class);
 
 	public RestApiPrivilegesEvaluator(Settings settings, AdminDNs adminDNs, PrivilegesEvaluator privilegesEvaluator, PrincipalExtractor principalExtractor, Path configPath,
-			ThreadPool threadPool) {
+			ThreadPool threadPool, IndexBaseConfigurationRepository cl) {
 
 		this.adminDNs = adminDNs;
 		this.privilegesEvaluator = privilegesEvaluator;
@@ -84,55 +122,97 @@ public class RestApiPrivilegesEvaluator {
 		this.configPath = configPath;
 		this.threadPool = threadPool;
 		this.settings = settings;
+		this.rolesMappingCache = CacheBuilder.<RolesMappingKey, Set<String>>builder().setExpireAfterWrite(ROLES_MAPPING_CACHE_TTL)
+				.setMaximumWeight(ROLES_MAPPING_CACHE_SIZE).build();
+		this.adminCertCache = CacheBuilder.<SSLSession, AdminCertDecision>builder().setExpireAfterWrite(ADMIN_CERT_CACHE_TTL)
+				.setMaximumWeight(ADMIN_CERT_CACHE_SIZE).build();
 
 		// set up
 		
 		// all endpoints and methods
-		Map<Endpoint, List<Method>> allEndpoints = new HashMap<>();
+		Map<Endpoint, Set<Method>> allEndpoints = new EnumMap<>(Endpoint.class);
 		for(Endpoint endpoint : Endpoint.values()) {
-			List<Method> allMethods = new LinkedList<>();
-			allMethods.addAll(Arrays.asList(Method.values()));
-			allEndpoints.put(endpoint, allMethods);
+			allEndpoints.put(endpoint, Collections.unmodifiableSet(EnumSet.allOf(Method.class)));
 		}
 		this.allEndpoints = Collections.unmodifiableMap(allEndpoints);
 
-		// setup role based permissions
-		allowedRoles.addAll(settings.getAsList(ConfigConstants.SEARCHGUARD_RESTAPI_ROLES_ENABLED));
-
-		this.roleBasedAccessEnabled = !allowedRoles.isEmpty();
+		this.permissions = new Permissions(settings.getAsList(ConfigConstants.SEARCHGUARD_RESTAPI_ROLES_ENABLED),
+				settings.getByPrefix(ConfigConstants.SEARCHGUARD_RESTAPI_ENDPOINTS_DISABLED + "."));
 
-		// globally disabled endpoints, disables access to Endpoint/Method combination for all roles
-		Settings globalSettings = settings.getAsSettings(ConfigConstants.SEARCHGUARD_RESTAPI_ENDPOINTS_DISABLED + ".global");
-		if (!globalSettings.isEmpty()) {
-			globallyDisabledEndpoints = parseDisabledEndpoints(globalSettings);	
-		}
-		
-		if (logger.isDebugEnabled()) {
-			logger.debug("Globally disabled endpoints: {}", globallyDisabledEndpoints);
+		// role sets of users change with the roles mapping. The disabled
+		// endpoints per role set only depend on the node settings.
+		if (cl != null) {
+			cl.subscribeOnChange(ConfigConstants.CONFIGNAME_ROLES_MAPPING, config -> rolesMappingCache.invalidateAll());
 		}
+	}
 
-		for (String role : allowedRoles) {
-			Settings settingsForRole = settings.getAsSettings(ConfigConstants.SEARCHGUARD_RESTAPI_ENDPOINTS_DISABLED + "." + role);
-			if (settingsForRole.isEmpty()) {
-				if (logger.isDebugEnabled()) {
-					logger.debug("No disabled endpoints/methods for permitted role {} found, allowing all", role);
+	/**
+	 * The REST API permissions parsed from the node settings,
+	 * together with the disabled endpoints evaluated for role sets. Never
+	 * modified after construction except for the cache.
+	 */
+	private final class Permissions {
+
+		private final Set<String> allowedRoles;
+
+		private final boolean roleBasedAccessEnabled;
+
+		// endpoints per role, read from settings. Methods are kept in EnumSets,
+		// which are bit vectors, so intersecting roles and checking a method are
+		// bitwise operations.
+		private final Map<String, Map<Endpoint, Set<Method>>> disabledEndpointsForRoles = new HashMap<>();
+
+		// globally disabled endpoints and methods, will always be forbidden
+		private final Map<Endpoint, Set<Method>> globallyDisabledEndpoints;
+
+		// endpoints per set of SG roles, evaluated and cached dynamically. Many
+		// users share the same roles, so this is keyed by the sorted role set
+		// rather than by user. Lives as long as these permissions.
+		private final Cache<SortedSet<String>, Map<Endpoint, Set<Method>>> disabledEndpointsForRoleSets = CacheBuilder
+				.<SortedSet<String>, Map<Endpoint, Set<Method>>>builder().setMaximumWeight(CACHE_SIZE).build();
+
+		private Permissions(List<String> rolesEnabled, Settings endpointsDisabled) {
+
+			// setup role based permissions
+			this.allowedRoles = Collections.unmodifiableSet(new HashSet<>(rolesEnabled));
+
+			this.roleBasedAccessEnabled = !allowedRoles.isEmpty();
+
+			// globally disabled endpoints, disables access to Endpoint/Method combination for all roles
+			Settings globalSettings = endpointsDisabled.getAsSettings("global");
+			if (!globalSettings.isEmpty()) {
+				globallyDisabledEndpoints = parseDisabledEndpoints(globalSettings);	
+			} else {
+				globallyDisabledEndpoints = Collections.emptyMap();
+			}
+			
+			if (logger.isDebugEnabled()) {
+				logger.debug("Globally disabled endpoints: {}", globallyDisabledEndpoints);
+			}
+
+			for (String role : allowedRoles) {
+				Settings settingsForRole = endpointsDisabled.getAsSettings(role);
+				if (settingsForRole.isEmpty()) {
+					if (logger.isDebugEnabled()) {
+						logger.debug("No disabled endpoints/methods for permitted role {} found, allowing all", role);
+					}
+					continue;
+				}
+				Map<Endpoint, Set<Method>> disabledEndpointsForRole = parseDisabledEndpoints(settingsForRole);
+				if (!disabledEndpointsForRole.isEmpty()) {
+					disabledEndpointsForRoles.put(role, disabledEndpointsForRole);
+				} else {
+					logger.warn("Disabled endpoints/methods empty for role {}, please check configuration", role);
 				}
-				continue;
 			}
-			Map<Endpoint, List<Method>> disabledEndpointsForRole = parseDisabledEndpoints(settingsForRole);
-			if (!disabledEndpointsForRole.isEmpty()) {
-				disabledEndpointsForRoles.put(role, disabledEndpointsForRole);
-			} else {
-				logger.warn("Disabled endpoints/methods empty for role {}, please check configuration", role);
+			if (logger.isTraceEnabled()) {
+				logger.trace("Parsed permission set for endpoints: {}", disabledEndpointsForRoles);
 			}
 		}
-		if (logger.isTraceEnabled()) {
-			logger.trace("Parsed permission set for endpoints: {}", disabledEndpointsForRoles);
-		}
 	}
 
 	@SuppressWarnings({ "rawtypes" })
-	private Map<Endpoint, List<Method>> parseDisabledEndpoints(Settings settings) {
+	private Map<Endpoint, Set<Method>> parseDisabledEndpoints(Settings settings) {
 
 		// Expects Setting like: 'ACTIONGROUPS=["GET", "POST"]'
 		if (settings == null || settings.isEmpty()) {
@@ -140,7 +220,7 @@ public class RestApiPrivilegesEvaluator {
 			return Collections.emptyMap();
 		}
 
-		final Map<Endpoint, List<Method>> disabledEndpoints = new HashMap<Endpoint, List<Method>>();
+		final Map<Endpoint, Set<Method>> disabledEndpoints = new EnumMap<>(Endpoint.class);
 		
 		Map<String, Object> disabledEndpointsSettings = Utils.convertJsonToxToStructuredMap(settings);
 
@@ -164,7 +244,7 @@ public class RestApiPrivilegesEvaluator {
 			if (!(value.getValue() instanceof Collection)) {
 				logger.error("Disabled HTTP methods of endpoint '{}' must be an array, actually is '{}', skipping.", endpointString, (value.getValue().toString()));
 			}
-			List<Method> disabledMethods = new LinkedList<>();
+			Set<Method> disabledMethods = EnumSet.noneOf(Method.class);
 			for (Object disabledMethodObj : (Collection) value.getValue()) {
 				if (disabledMethodObj == null) {
 					logger.error("Found null value in disabled HTTP methods of endpoint '{}', skipping.", endpointString);
@@ -210,60 +290,139 @@ public class RestApiPrivilegesEvaluator {
 	 *         TODO: log failed attempt in audit log
 	 */
 	public String checkAccessPermissions(RestRequest request, Endpoint endpoint) throws IOException {
+		return checkAccessPermissions(request, endpoint, request.method());
+	}
+
+	/**
+	 * Same as {@link #checkAccessPermissions(RestRequest, Endpoint)}, but checks
+	 * the given method instead of the one of the request. Used for requests
+	 * like bulk that perform the operations of other methods.
+	 */
+	public String checkAccessPermissions(RestRequest request, Endpoint endpoint, Method method) throws IOException {
 		
 		if (logger.isDebugEnabled()) {
-			logger.debug("Checking admin access for endpoint {}, path {} and method {}", endpoint.name(),  request.path(), request.method().name());
+			logger.debug("Checking admin access for endpoint {}, path {} and method {}", endpoint.name(),  request.path(), method.name());
 		}
 
-		String roleBasedAccessFailureReason = checkRoleBasedAccessPermissions(request, endpoint);
+		// failure reasons are only built if both checks fail
+		Supplier<String> roleBasedAccessFailureReason = null;
+		Supplier<String> certBasedAccessFailureReason = null;
+
+		if (isCertCheckFirst(request)) {
+			certBasedAccessFailureReason = checkAdminCertBasedAccessPermissions(request);
+			// TLS access granted, skip checking roles
+			if (certBasedAccessFailureReason == null) {
+				return null;
+			}
+		}
+
+		roleBasedAccessFailureReason = checkRoleBasedAccessPermissions(request, endpoint, method);
 		// Role based access granted
 		if (roleBasedAccessFailureReason == null) {
 			return null;
 		}
 
-		String certBasedAccessFailureReason = checkAdminCertBasedAccessPermissions(request);
-		// TLS access granted, skip checking roles
 		if (certBasedAccessFailureReason == null) {
-			return null;
+			certBasedAccessFailureReason = checkAdminCertBasedAccessPermissions(request);
+			// TLS access granted
+			if (certBasedAccessFailureReason == null) {
+				return null;
+			}
 		}
 
+		return constructAccessErrorMessage(roleBasedAccessFailureReason.get(), certBasedAccessFailureReason.get());
+	}
 
-		return constructAccessErrorMessage(roleBasedAccessFailureReason, certBasedAccessFailureReason);
+	/**
+	 * Each access check is only evaluated if the one before did not grant
+	 * access. The certificate is checked first if the TLS session is already
+	 * known to use an admin certificate, the roles otherwise.
+	 */
+	private boolean isCertCheckFirst(RestRequest request) {
+		final SSLSession session = getSSLSession(request);
+		return session != null && isKnownAdminSession(session);
+	}
+
+	boolean isKnownAdminSession(SSLSession session) {
+		final AdminCertDecision decision = cachedAdminCertDecision(session);
+		return decision != null && decision.failureReason == null;
 	}
 
 	public Boolean currentUserHasRestApiAccess(Set<String> userRoles) {
+		return hasRestApiAccess(this.permissions, userRoles);
+	}
+
+	private static boolean hasRestApiAccess(Permissions permissions, Set<String> userRoles) {
 
 		// check if user has any role that grants access
-		return !Collections.disjoint(allowedRoles, userRoles);
+		return !Collections.disjoint(permissions.allowedRoles, userRoles);
 
 	}
 
-	public Map<Endpoint, List<Method>> getDisabledEndpointsForCurrentUser(String userPrincipal, Set<String> userRoles) {
-		
+	public Map<Endpoint, Set<Method>> getDisabledEndpointsForCurrentUser(String userPrincipal, Set<String> userRoles) {
+		return getDisabledEndpoints(this.permissions, userPrincipal, userRoles);
+	}
+
+	private Map<Endpoint, Set<Method>> getDisabledEndpoints(Permissions permissions, String userPrincipal, Set<String> userRoles) {
+
+		if (!hasRestApiAccess(permissions, userRoles)) {
+			return this.allEndpoints;
+		}
+
 		// cache
-		if (disabledEndpointsForUsers.containsKey(userPrincipal)) {
-			return disabledEndpointsForUsers.get(userPrincipal);
+		final SortedSet<String> roleSet = Collections.unmodifiableSortedSet(new TreeSet<>(userRoles));
+		try {
+			return permissions.disabledEndpointsForRoleSets.computeIfAbsent(roleSet, key -> evaluateDisabledEndpoints(permissions, userPrincipal, key));
+		} catch (ExecutionException e) {
+			throw ExceptionsHelper.convertToElastic((Exception) e.getCause());
 		}
-		
-		if (!currentUserHasRestApiAccess(userRoles)) {
-			return this.allEndpoints;
+	}
+
+	/**
+	 * Maps the SG roles of the user. The result is kept in the thread context,
+	 * so later checks of the same request reuse it, and for a short time for
+	 * further requests of the same user from the same address.
+	 */
+	@SuppressWarnings("unchecked")
+	public Set<String> mapSgRoles(User user, TransportAddress remoteAddress) {
+		final ThreadContext threadContext = threadPool.getThreadContext();
+
+		Set<String> userRoles = (Set<String>) threadContext.getTransient(SG_ROLES_TRANSIENT);
+		if (userRoles != null) {
+			return userRoles;
+		}
+
+		if (user == null) {
+			userRoles = privilegesEvaluator.mapSgRoles(user, remoteAddress);
+		} else {
+			try {
+				userRoles = rolesMappingCache.computeIfAbsent(new RolesMappingKey(user, remoteAddress),
+						key -> Collections.unmodifiableSet(privilegesEvaluator.mapSgRoles(user, remoteAddress)));
+			} catch (ExecutionException e) {
+				throw ExceptionsHelper.convertToElastic((Exception) e.getCause());
+			}
 		}
 
+		threadContext.putTransient(SG_ROLES_TRANSIENT, userRoles);
+		return userRoles;
+	}
+
+	private Map<Endpoint, Set<Method>> evaluateDisabledEndpoints(Permissions permissions, String userPrincipal, Set<String> userRoles) {
+
 		// will contain the final list of disabled endpoints and methods
-		Map<Endpoint, List<Method>> finalEndpoints = new HashMap<>();
+		Map<Endpoint, Set<Method>> finalEndpoints = new EnumMap<>(Endpoint.class);
 		
 		// List of all disabled endpoints for user. Disabled endpoints must be configured in all
 		// roles to take effect. If a role contains a disabled endpoint, but another role
 		// allows this endpoint (i.e. not contained in the disabled endpoints for this role),
 		// the access is allowed.
 				
-		// make list mutable
-		List<Endpoint> remainingEndpoints = new LinkedList<>(Arrays.asList(Endpoint.values()));
+		Set<Endpoint> remainingEndpoints = EnumSet.allOf(Endpoint.class);
 
 		// only retain endpoints contained in all roles for user
 		boolean hasDisabledEndpoints = false;
 		for (String userRole : userRoles) {
-			Map<Endpoint, List<Method>> endpointsForRole = disabledEndpointsForRoles.get(userRole);
+			Map<Endpoint, Set<Method>> endpointsForRole = permissions.disabledEndpointsForRoles.get(userRole);
 			if (endpointsForRole == null || endpointsForRole.isEmpty()) {
 				continue;
 			}
@@ -282,18 +441,16 @@ public class RestApiPrivilegesEvaluator {
 			if (logger.isDebugEnabled()) {
 				logger.debug("No disabled endpoints for user {} at all,  only globally disabledendpoints apply.", userPrincipal, remainingEndpoints);
 			}
-			disabledEndpointsForUsers.put(userPrincipal, addGloballyDisabledEndpoints(finalEndpoints));
-			return finalEndpoints;
+			return Collections.unmodifiableMap(addGloballyDisabledEndpoints(permissions, finalEndpoints));
 
 		}
 		
 		// one or more disabled remaining endpoints, keep only 
 		// methods contained in all roles for each endpoint
 		for (Endpoint endpoint : remainingEndpoints) {
-			// make list mutable
-			List<Method> remainingMethodsForEndpoint = new LinkedList<>(Arrays.asList(Method.values()));
+			Set<Method> remainingMethodsForEndpoint = EnumSet.allOf(Method.class);
 			for (String userRole : userRoles) {
-				Map<Endpoint, List<Method>> endpoints = disabledEndpointsForRoles.get(userRole);
+				Map<Endpoint, Set<Method>> endpoints = permissions.disabledEndpointsForRoles.get(userRole);
 				if (endpoints != null && !endpoints.isEmpty()) {
 					remainingMethodsForEndpoint.retainAll(endpoints.get(endpoint));
 				}
@@ -302,61 +459,59 @@ public class RestApiPrivilegesEvaluator {
 			finalEndpoints.put(endpoint, remainingMethodsForEndpoint);
 		}
 
-		if (logger.isDebugEnabled()) {
-			logger.debug("Disabled endpoints for user {} after retaining all : {}", userPrincipal, finalEndpoints);
-		}
-
 		// add globally disabled endpoints and methods, will always be disabled
-		addGloballyDisabledEndpoints(finalEndpoints);		
-		disabledEndpointsForUsers.put(userPrincipal, finalEndpoints);
+		addGloballyDisabledEndpoints(permissions, finalEndpoints);		
 		
 		if (logger.isDebugEnabled()) {
-			logger.debug("Disabled endpoints for user {} after retaining all : {}", disabledEndpointsForUsers.get(userPrincipal));
+			logger.debug("Disabled endpoints for user {} after retaining all : {}", userPrincipal, finalEndpoints);
 		}
 
-		return disabledEndpointsForUsers.get(userPrincipal);
+		return Collections.unmodifiableMap(finalEndpoints);
 	}
 	
-	private Map<Endpoint, List<Method>> addGloballyDisabledEndpoints(Map<Endpoint, List<Method>> endpoints) {
+	private static Map<Endpoint, Set<Method>> addGloballyDisabledEndpoints(Permissions permissions, Map<Endpoint, Set<Method>> endpoints) {
+		final Map<Endpoint, Set<Method>> globallyDisabledEndpoints = permissions.globallyDisabledEndpoints;
 		if(globallyDisabledEndpoints != null && !globallyDisabledEndpoints.isEmpty()) {
 			Set<Endpoint> globalEndoints = globallyDisabledEndpoints.keySet();
 			for(Endpoint endpoint : globalEndoints) {
-				endpoints.putIfAbsent(endpoint, new LinkedList<>());
+				endpoints.putIfAbsent(endpoint, EnumSet.noneOf(Method.class));
 				endpoints.get(endpoint).addAll(globallyDisabledEndpoints.get(endpoint));
 			}			
 		}
 		return endpoints;
 	}
 	
-	private String checkRoleBasedAccessPermissions(RestRequest request, Endpoint endpoint) {
+	/** @return null if access is granted, the reason why not otherwise */
+	private Supplier<String> checkRoleBasedAccessPermissions(RestRequest request, Endpoint endpoint, Method method) {
 		if (logger.isTraceEnabled()) {
-			logger.trace("Checking role based admin access for endpoint {} and method {}", endpoint.name(), request.method().name());
+			logger.trace("Checking role based admin access for endpoint {} and method {}", endpoint.name(), method.name());
 		}
 		// Role based access. Check that user has role suitable for admin access
 		// and that the role has also access to this endpoint.
-		if (this.roleBasedAccessEnabled) {
+		final Permissions permissions = this.permissions;
+		if (permissions.roleBasedAccessEnabled) {
 
 			// get current user and roles
 			final User user = (User) threadPool.getThreadContext().getTransient(ConfigConstants.SG_USER);
 			final TransportAddress remoteAddress = (TransportAddress) threadPool.getThreadContext().getTransient(ConfigConstants.SG_REMOTE_ADDRESS);
 
 			// map the users SG roles
-			Set<String> userRoles = privilegesEvaluator.mapSgRoles(user, remoteAddress);
+			Set<String> userRoles = mapSgRoles(user, remoteAddress);
 
 			// check if user has any role that grants access
-			if (currentUserHasRestApiAccess(userRoles)) {
+			if (hasRestApiAccess(permissions, userRoles)) {
 				// yes, calculate disabled end points. Since a user can have
 				// multiple roles, the endpoint
 				// needs to be disabled in all roles.
 
-				Map<Endpoint, List<Method>> disabledEndpointsForUser = getDisabledEndpointsForCurrentUser(user.getName(), userRoles);
+				Map<Endpoint, Set<Method>> disabledEndpointsForUser = getDisabledEndpoints(permissions, user.getName(), userRoles);
 
 				if (logger.isDebugEnabled()) {
 					logger.debug("Disabled endpoints for user {} : {} ", user, disabledEndpointsForUser);
 				}
 
 				// check if we have any disabled methods for this endpoint
-				List<Method> disabledMethodsForEndpoint = disabledEndpointsForUser.get(endpoint);
+				Set<Method> disabledMethodsForEndpoint = disabledEndpointsForUser.get(endpoint);
 
 				// no settings, all methods for this endpoint allowed
 				if (disabledMethodsForEndpoint == null || disabledMethodsForEndpoint.isEmpty()) {
@@ -367,57 +522,147 @@ public class RestApiPrivilegesEvaluator {
 				}
 
 				// some methods disabled, check requested method
-				if (!disabledMethodsForEndpoint.contains(request.method())) {
+				if (!disabledMethodsForEndpoint.contains(method)) {
 					if (logger.isDebugEnabled()) {
-						logger.debug("Request method {} for user {} and endpoint {} not restricted, access allowed ", request.method(), user, endpoint);
+						logger.debug("Request method {} for user {} and endpoint {} not restricted, access allowed ", method, user, endpoint);
 					}
 					return null;
 				}
 
-				logger.info("User {} with Search Guard Roles {} does not have access to endpoint {} and method {}, checking admin TLS certificate now.", user, userRoles,
-						endpoint.name(), request.method());
-				return "User " + user.getName() + " with Search Guard Roles " + userRoles + " does not have any access to endpoint " + endpoint.name() + " and method "
-						+ request.method().name();
+				if (logger.isDebugEnabled()) {
+					logger.debug("User {} with Search Guard Roles {} does not have access to endpoint {} and method {}", user, userRoles,
+							endpoint.name(), method);
+				}
+				return () -> "User " + user.getName() + " with Search Guard Roles " + userRoles + " does not have any access to endpoint " + endpoint.name() + " and method "
+						+ method.name();
 			} else {
 				// no, but maybe the request contains a client certificate.
 				// Remember error reason for better response message later on.
-				logger.info("User {} with Search Guard roles {} does not have any role privileged for admin access.", user, userRoles);
-				return "User " + user.getName() + " with Search Guard Roles " + userRoles + " does not have any role privileged for admin access";
+				if (logger.isDebugEnabled()) {
+					logger.debug("User {} with Search Guard roles {} does not have any role privileged for admin access.", user, userRoles);
+				}
+				return () -> "User " + user.getName() + " with Search Guard Roles " + userRoles + " does not have any role privileged for admin access";
 			}
 		}
-		return "Role based access not enabled.";
+		return () -> "Role based access not enabled.";
 	}
 
-	private String checkAdminCertBasedAccessPermissions(RestRequest request) throws IOException {
+	/** @return null if access is granted, the reason why not otherwise */
+	private Supplier<String> checkAdminCertBasedAccessPermissions(RestRequest request) throws IOException {
 		if (logger.isTraceEnabled()) {
 			logger.trace("Checking certificate based admin access for path {} and method {}", request.path(), request.method().name());
 		}
 		
+		// the certificate of a TLS session does not change, reuse the decision
+		final SSLSession session = getSSLSession(request);
+		if (session != null) {
+			final AdminCertDecision decision = cachedAdminCertDecision(session);
+			if (decision != null) {
+				return decision.failureReason;
+			}
+		}
+
 		// Certificate based access, Check if we have an admin TLS certificate
 		SSLInfo sslInfo = SSLRequestHelper.getSSLInfo(settings, configPath, request, principalExtractor);
 
+		// failures are logged by the caller if no other check grants access
 		if (sslInfo == null) {
-			// here we log on error level, since authentication finally failed
-			logger.warn("No ssl info found in request.");
-			return "No ssl info found in request.";
+			return () -> "No ssl info found in request.";
 		}
 
 		X509Certificate[] certs = sslInfo.getX509Certs();
 
 		if (certs == null || certs.length == 0) {
-			logger.warn("No client TLS certificate found in request");
-			return "No client TLS certificate found in request";
+			return () -> "No client TLS certificate found in request";
 		}
 
+		Supplier<String> failureReason = null;
 		if (!adminDNs.isAdmin(sslInfo.getPrincipal())) {
-			logger.warn("SG admin permissions required but {} is not an admin", sslInfo.getPrincipal());
-			return "SG admin permissions required but " + sslInfo.getPrincipal() + " is not an admin";
+			final String principal = sslInfo.getPrincipal();
+			failureReason = () -> "SG admin permissions required but " + principal + " is not an admin";
 		}
-		return null;
+
+		if (session != null) {
+			cacheAdminCertDecision(session, failureReason, certs[0].getNotAfter().getTime());
+		}
+		return failureReason;
+	}
+
+	/** @return the decision for the TLS session, null if there is none or the session or certificate is no longer valid */
+	AdminCertDecision cachedAdminCertDecision(SSLSession session) {
+		final AdminCertDecision decision = adminCertCache.get(session);
+		return decision != null && decision.isValid(session) ? decision : null;
+	}
+
+	AdminCertDecision cacheAdminCertDecision(SSLSession session, Supplier<String> failureReason, long notAfter) {
+		final AdminCertDecision decision = new AdminCertDecision(failureReason, notAfter);
+		adminCertCache.put(session, decision);
+		return decision;
+	}
+
+	/** the TLS session of the HTTP connection, null if the request was not sent over TLS */
+	private static SSLSession getSSLSession(RestRequest request) {
+		if (!(request instanceof Netty4HttpRequest)) {
+			return null;
+		}
+		final SslHandler sslHandler = ((Netty4HttpRequest) request).getChannel().pipeline().get(SslHandler.class);
+		return sslHandler == null ? null : sslHandler.engine().getSession();
 	}
 
 	private String constructAccessErrorMessage(String roleBasedAccessFailure, String certBasedAccessFailure) {
 		return roleBasedAccessFailure + ". " + certBasedAccessFailure;
 	}
 
+	/** cached result of the admin certificate check, expires with the session or the certificate */
+	static final class AdminCertDecision {
+
+		// null if the certificate is an admin certificate
+		private final Supplier<String> failureReason;
+		private final long notAfter;
+
+		private AdminCertDecision(Supplier<String> failureReason, long notAfter) {
+			this.failureReason = failureReason;
+			this.notAfter = notAfter;
+		}
+
+		private boolean isValid(SSLSession session) {
+			return session.isValid() && System.currentTimeMillis() < notAfter;
+		}
+	}
+
+	/**
+	 * everything the roles mapping of a user depends on, the hosts of a
+	 * mapping match the address only, so the port of the client is left out
+	 */
+	static final class RolesMappingKey {
+
+		private final String name;
+		private final Set<String> backendRoles;
+		private final InetAddress remoteAddress;
+
+		RolesMappingKey(User user, TransportAddress remoteAddress) {
+			this.name = user.getName();
+			this.backendRoles = new HashSet<>(user.getRoles());
+			this.remoteAddress = remoteAddress == null ? null : remoteAddress.address().getAddress();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof RolesMappingKey)) {
+				return false;
+			}
+			final RolesMappingKey other = (RolesMappingKey) obj;
+			return Objects.equals(name, other.name) && backendRoles.equals(other.backendRoles)
+					&& Objects.equals(remoteAddress, other.remoteAddress);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(name, backendRoles, remoteAddress);
+		}
+	}
+
 }
@@ -15,6 +15,7 @@
 package com.floragunn.searchguard.dlic.rest.api;
 
 import java.nio.file.Path;
+import java.util.concurrent.Executor;
 
 import org.elasticsearch.client.Client;
 import org.elasticsearch.cluster.service.ClusterService;
@@ -38,12 +39,17 @@ public class RolesApiAction extends AbstractApiAction {
 
 	@Inject
 	public RolesApiAction(Settings settings, final Path configPath, RestController controller, Client client, AdminDNs adminDNs, IndexBaseConfigurationRepository cl,
-			ClusterService cs, final PrincipalExtractor principalExtractor, final PrivilegesEvaluator evaluator, ThreadPool threadPool, AuditLog auditLog) {
-		super(settings, configPath, controller, client, adminDNs, cl, cs, principalExtractor, evaluator, threadPool, auditLog);
+			ClusterService cs, final PrincipalExtractor principalExtractor, final PrivilegesEvaluator evaluator, ThreadPool threadPool, AuditLog auditLog, Executor managementExecutor,
+            final RestApiPrivilegesEvaluator restApiPrivilegesEvaluator, final ConfigIndexState configIndexState) {
+		super(settings, configPath, controller, client, adminDNs, cl, cs, principalExtractor, evaluator, threadPool, auditLog, managementExecutor, restApiPrivilegesEvaluator, configIndexState);
 		controller.registerHandler(Method.GET, "/_searchguard/api/roles/", this);
 		controller.registerHandler(Method.GET, "/_searchguard/api/roles/{name}", this);
 		controller.registerHandler(Method.DELETE, "/_searchguard/api/roles/{name}", this);
 		controller.registerHandler(Method.PUT, "/_searchguard/api/roles/{name}", this);
+		controller.registerHandler(Method.POST, "/_searchguard/api/roles/" + BULK_ENDPOINT, this);
+		controller.registerHandler(Method.POST, "/_searchguard/api/roles/" + PATCH_ENDPOINT, this);
+		controller.registerHandler(Method.POST, "/_searchguard/api/roles/{name}/" + PATCH_ENDPOINT, this);
+		controller.registerHandler(Method.POST, "/_searchguard/api/roles/" + MGET_ENDPOINT, this);
 	}
 
 	@Override
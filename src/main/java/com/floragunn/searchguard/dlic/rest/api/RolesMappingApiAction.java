@@ -15,6 +15,7 @@
 package com.floragunn.searchguard.dlic.rest.api;
 
 import java.nio.file.Path;
+import java.util.concurrent.Executor;
 
 import org.elasticsearch.client.Client;
 import org.elasticsearch.cluster.service.ClusterService;
@@ -39,13 +40,18 @@ public class RolesMappingApiAction extends AbstractApiAction {
 	@Inject
 	public RolesMappingApiAction(final Settings settings, final Path configPath, final RestController controller, final Client client,
 			final AdminDNs adminDNs, final IndexBaseConfigurationRepository cl, final ClusterService cs,
-            final PrincipalExtractor principalExtractor, final PrivilegesEvaluator evaluator, ThreadPool threadPool, AuditLog auditLog) {
-		super(settings, configPath, controller, client, adminDNs, cl, cs, principalExtractor, evaluator, threadPool, auditLog);
+            final PrincipalExtractor principalExtractor, final PrivilegesEvaluator evaluator, ThreadPool threadPool, AuditLog auditLog, Executor managementExecutor,
+            final RestApiPrivilegesEvaluator restApiPrivilegesEvaluator, final ConfigIndexState configIndexState) {
+		super(settings, configPath, controller, client, adminDNs, cl, cs, principalExtractor, evaluator, threadPool, auditLog, managementExecutor, restApiPrivilegesEvaluator, configIndexState);
 		
 		controller.registerHandler(Method.GET, "/_searchguard/api/rolesmapping/", this);
 		controller.registerHandler(Method.GET, "/_searchguard/api/rolesmapping/{name}", this);
 		controller.registerHandler(Method.DELETE, "/_searchguard/api/rolesmapping/{name}", this);
 		controller.registerHandler(Method.PUT, "/_searchguard/api/rolesmapping/{name}", this);
+		controller.registerHandler(Method.POST, "/_searchguard/api/rolesmapping/" + BULK_ENDPOINT, this);
+		controller.registerHandler(Method.POST, "/_searchguard/api/rolesmapping/" + PATCH_ENDPOINT, this);
+		controller.registerHandler(Method.POST, "/_searchguard/api/rolesmapping/{name}/" + PATCH_ENDPOINT, this);
+		controller.registerHandler(Method.POST, "/_searchguard/api/rolesmapping/" + MGET_ENDPOINT, this);
 
 	}
 
@@ -14,19 +14,20 @@
 
 package com.floragunn.searchguard.dlic.rest.api;
 
+import java.io.IOException;
 import java.nio.file.Path;
+import java.util.concurrent.Executor;
 
 import org.elasticsearch.client.Client;
 import org.elasticsearch.cluster.service.ClusterService;
 import org.elasticsearch.common.bytes.BytesReference;
-import org.elasticsearch.common.collect.Tuple;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.rest.BytesRestResponse;
+import org.elasticsearch.rest.RestChannel;
 import org.elasticsearch.rest.RestController;
 import org.elasticsearch.rest.RestRequest;
 import org.elasticsearch.rest.RestRequest.Method;
-import org.elasticsearch.rest.RestResponse;
 import org.elasticsearch.rest.RestStatus;
 import org.elasticsearch.threadpool.ThreadPool;
 
@@ -44,33 +45,38 @@ public class SgConfigAction extends AbstractApiAction {
 	@Inject
 	public SgConfigAction(final Settings settings, final Path configPath, final RestController controller, final Client client,
 			final AdminDNs adminDNs, final IndexBaseConfigurationRepository cl, final ClusterService cs,
-			final PrincipalExtractor principalExtractor, final PrivilegesEvaluator evaluator, ThreadPool threadPool, AuditLog auditLog) {
-		super(settings, configPath, controller, client, adminDNs, cl, cs, principalExtractor, evaluator, threadPool, auditLog);
+			final PrincipalExtractor principalExtractor, final PrivilegesEvaluator evaluator, ThreadPool threadPool, AuditLog auditLog, Executor managementExecutor,
+            final RestApiPrivilegesEvaluator restApiPrivilegesEvaluator, final ConfigIndexState configIndexState) {
+		super(settings, configPath, controller, client, adminDNs, cl, cs, principalExtractor, evaluator, threadPool, auditLog, managementExecutor, restApiPrivilegesEvaluator, configIndexState);
 		controller.registerHandler(Method.GET, "/_searchguard/api/sgconfig/", this);
 	}
 
 
 
 	@Override
-	protected Tuple<String[], RestResponse> handleGet(RestRequest request, Client client,
-			final Settings.Builder additionalSettingsBuilder) throws Throwable {
+	protected void handleGet(final RestChannel channel, RestRequest request, Client client,
+			final Settings.Builder additionalSettingsBuilder) throws IOException {
 
 		final Settings configurationSettings = loadAsSettings(getConfigName());
 
-		return new Tuple<String[], RestResponse>(new String[0],
-				new BytesRestResponse(RestStatus.OK, convertToJson(configurationSettings)));
+		channel.sendResponse(new BytesRestResponse(RestStatus.OK, convertToJson(configurationSettings)));
+	}
+
+	@Override
+	protected void consumeParameters(final RestRequest request) {
+		// no resources to query
 	}
 	
 	@Override
-	protected Tuple<String[], RestResponse> handlePut(final RestRequest request, final Client client,
-			final Settings.Builder additionalSettings) throws Throwable {
-		return notImplemented(Method.PUT);
+	protected void handlePut(final RestChannel channel, final RestRequest request, final Client client,
+			final Settings.Builder additionalSettings) throws IOException {
+		notImplemented(channel, Method.PUT);
 	}
 
 	@Override
-	protected Tuple<String[], RestResponse> handleDelete(final RestRequest request, final Client client,
-			final Settings.Builder additionalSettings) throws Throwable {
-		return notImplemented(Method.DELETE);
+	protected void handleDelete(final RestChannel channel, final RestRequest request, final Client client,
+			final Settings.Builder additionalSettings) throws IOException {
+		notImplemented(channel, Method.DELETE);
 	}
 
 	@Override
@@ -0,0 +1,377 @@
+/*
+ * Copyright 2016-2017 by floragunn GmbH - All rights reserved
+ *
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed here is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * This software is free of charge for non-commercial and academic use.
+ * For commercial use in a production environment you have to obtain a license
+ * from https://floragunn.com
+ *
+ */
+
+package com.floragunn.searchguard.dlic.rest.support;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+
+import org.elasticsearch.ElasticsearchParseException;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+
+/**
+ * Minimal JSON Patch (RFC 6902) implementation working directly on the
+ * structured maps and lists the configuration is converted to. Supports all
+ * operations: add, remove, replace, move, copy and test.
+ */
+public class JsonPatch {
+
+    public static enum Op {
+        ADD, REMOVE, REPLACE, MOVE, COPY, TEST;
+    }
+
+    private final List<Operation> operations;
+
+    private JsonPatch(final List<Operation> operations) {
+        this.operations = operations;
+    }
+
+    /**
+     * Parses a JSON Patch document, i.e. an array of operations
+     *
+     * @throws ElasticsearchParseException if the document is not a valid patch
+     */
+    public static JsonPatch parse(final BytesReference content) {
+        final List<Object> rawOperations;
+
+        if (content == null || content.length() == 0) {
+            throw new ElasticsearchParseException("Request body required for this action.");
+        }
+
+        try (XContentParser parser = XContentType.JSON.xContent().createParser(NamedXContentRegistry.EMPTY, content)) {
+            if (parser.nextToken() != XContentParser.Token.START_ARRAY) {
+                throw new ElasticsearchParseException("A JSON patch must be an array of operations");
+            }
+            rawOperations = parser.list();
+        } catch (IOException e) {
+            throw new ElasticsearchParseException("Could not parse JSON patch", e);
+        }
+
+        final List<Operation> operations = new ArrayList<>(rawOperations.size());
+
+        for (final Object raw : rawOperations) {
+            if (!(raw instanceof Map)) {
+                throw new ElasticsearchParseException("Each JSON patch operation must be an object");
+            }
+            final Map<?, ?> operation = (Map<?, ?>) raw;
+            final Object op = operation.get("op");
+            final Object path = operation.get("path");
+
+            if (op == null || path == null) {
+                throw new ElasticsearchParseException("JSON patch operation requires 'op' and 'path'");
+            }
+
+            final Op type;
+            try {
+                type = Op.valueOf(op.toString().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new ElasticsearchParseException("Unknown JSON patch operation [{}]", op);
+            }
+
+            final Object from = operation.get("from");
+            if ((type == Op.MOVE || type == Op.COPY) && from == null) {
+                throw new ElasticsearchParseException("JSON patch operation [{}] requires 'from'", op);
+            }
+
+            if ((type == Op.ADD || type == Op.REPLACE || type == Op.TEST) && !operation.containsKey("value")) {
+                throw new ElasticsearchParseException("JSON patch operation [{}] requires 'value'", op);
+            }
+
+            operations.add(new Operation(type, parsePointer(path.toString()), from == null ? null : parsePointer(from.toString()),
+                    operation.get("value")));
+        }
+
+        return new JsonPatch(operations);
+    }
+
+    /**
+     * Applies the patch to the given document. The document may be modified
+     * even if applying fails, callers should work on a copy they can discard.
+     *
+     * @return the patched document, which is a new object if the root was
+     *         replaced
+     * @throws JsonPatchException if an operation cannot be applied
+     */
+    public Object apply(Object document) {
+        for (final Operation operation : operations) {
+            document = operation.apply(document);
+        }
+        return document;
+    }
+
+    /**
+     * Returns the first path segment of every operation, i.e. the names of the
+     * top level entries a patch on a whole configuration touches
+     */
+    public List<String> topLevelKeys() {
+        final List<String> keys = new ArrayList<>();
+        for (final Operation operation : operations) {
+            if (!operation.path.isEmpty()) {
+                keys.add(operation.path.get(0));
+            }
+            if (operation.from != null && !operation.from.isEmpty()) {
+                keys.add(operation.from.get(0));
+            }
+        }
+        return keys;
+    }
+
+    /** true if any operation addresses the whole document */
+    public boolean hasRootOperation() {
+        for (final Operation operation : operations) {
+            if (operation.path.isEmpty() || (operation.from != null && operation.from.isEmpty())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static class Operation {
+
+        private final Op op;
+        private final List<String> path;
+        private final List<String> from;
+        private final Object value;
+
+        private Operation(final Op op, final List<String> path, final List<String> from, final Object value) {
+            this.op = op;
+            this.path = path;
+            this.from = from;
+            this.value = value;
+        }
+
+        private Object apply(final Object document) {
+            switch (op) {
+            case ADD:
+                return add(document, path, deepCopy(value));
+            case REMOVE:
+                remove(document, path);
+                return document;
+            case REPLACE:
+                get(document, path);
+                if (path.isEmpty()) {
+                    return deepCopy(value);
+                }
+                remove(document, path);
+                return add(document, path, deepCopy(value));
+            case MOVE:
+                if (path.size() > from.size() && path.subList(0, from.size()).equals(from)) {
+                    throw new JsonPatchException("Cannot move " + toPointer(from) + " into one of its children");
+                }
+                final Object moved = get(document, from);
+                remove(document, from);
+                return add(document, path, moved);
+            case COPY:
+                return add(document, path, deepCopy(get(document, from)));
+            case TEST:
+                if (!valueEquals(get(document, path), value)) {
+                    throw new JsonPatchException("Test failed for " + toPointer(path), true);
+                }
+                return document;
+            default:
+                throw new JsonPatchException("Unsupported operation " + op);
+            }
+        }
+    }
+
+    public static class JsonPatchException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final boolean testFailed;
+
+        public JsonPatchException(final String message) {
+            this(message, false);
+        }
+
+        public JsonPatchException(final String message, final boolean testFailed) {
+            super(message);
+            this.testFailed = testFailed;
+        }
+
+        /** true if a test operation failed, as opposed to an invalid patch */
+        public boolean isTestFailed() {
+            return testFailed;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object add(final Object document, final List<String> path, final Object value) {
+        if (path.isEmpty()) {
+            return value;
+        }
+
+        final Object parent = get(document, path.subList(0, path.size() - 1));
+        final String last = path.get(path.size() - 1);
+
+        if (parent instanceof Map) {
+            ((Map<String, Object>) parent).put(last, value);
+        } else if (parent instanceof List) {
+            final List<Object> list = (List<Object>) parent;
+            if ("-".equals(last)) {
+                list.add(value);
+            } else {
+                final int index = index(list, last, true);
+                list.add(index, value);
+            }
+        } else {
+            throw new JsonPatchException("Cannot add to " + toPointer(path) + ", parent is not a container");
+        }
+        return document;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void remove(final Object document, final List<String> path) {
+        if (path.isEmpty()) {
+            throw new JsonPatchException("Cannot remove the whole document");
+        }
+
+        final Object parent = get(document, path.subList(0, path.size() - 1));
+        final String last = path.get(path.size() - 1);
+
+        if (parent instanceof Map) {
+            final Map<String, Object> map = (Map<String, Object>) parent;
+            if (!map.containsKey(last)) {
+                throw new JsonPatchException("No value at " + toPointer(path));
+            }
+            map.remove(last);
+        } else if (parent instanceof List) {
+            final List<Object> list = (List<Object>) parent;
+            list.remove(index(list, last, false));
+        } else {
+            throw new JsonPatchException("No value at " + toPointer(path));
+        }
+    }
+
+    private static Object get(final Object document, final List<String> path) {
+        Object current = document;
+        for (int i = 0; i < path.size(); i++) {
+            final String segment = path.get(i);
+            if (current instanceof Map) {
+                final Map<?, ?> map = (Map<?, ?>) current;
+                if (!map.containsKey(segment)) {
+                    throw new JsonPatchException("No value at " + toPointer(path.subList(0, i + 1)));
+                }
+                current = map.get(segment);
+            } else if (current instanceof List) {
+                final List<?> list = (List<?>) current;
+                current = list.get(index(list, segment, false));
+            } else {
+                throw new JsonPatchException("No value at " + toPointer(path.subList(0, i + 1)));
+            }
+        }
+        return current;
+    }
+
+    private static int index(final List<?> list, final String segment, final boolean allowEnd) {
+        final int index;
+        try {
+            index = Integer.parseInt(segment);
+        } catch (NumberFormatException e) {
+            throw new JsonPatchException("Invalid array index " + segment);
+        }
+        if (index < 0 || index > list.size() || (!allowEnd && index == list.size())) {
+            throw new JsonPatchException("Array index " + segment + " out of bounds");
+        }
+        return index;
+    }
+
+    /**
+     * Values read from Settings are strings, so scalars are compared by their
+     * string representation, e.g. 'true' equals "true"
+     */
+    private static boolean valueEquals(final Object left, final Object right) {
+        if (left instanceof Map && right instanceof Map) {
+            final Map<?, ?> l = (Map<?, ?>) left;
+            final Map<?, ?> r = (Map<?, ?>) right;
+            if (!l.keySet().equals(r.keySet())) {
+                return false;
+            }
+            for (final Entry<?, ?> entry : l.entrySet()) {
+                if (!valueEquals(entry.getValue(), r.get(entry.getKey()))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (left instanceof List && right instanceof List) {
+            final List<?> l = (List<?>) left;
+            final List<?> r = (List<?>) right;
+            if (l.size() != r.size()) {
+                return false;
+            }
+            for (int i = 0; i < l.size(); i++) {
+                if (!valueEquals(l.get(i), r.get(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (left instanceof Map || left instanceof List || right instanceof Map || right instanceof List) {
+            return false;
+        }
+        return Objects.equals(left == null ? null : left.toString(), right == null ? null : right.toString());
+    }
+
+    @SuppressWarnings("unchecked")
+    public static Object deepCopy(final Object value) {
+        if (value instanceof Map) {
+            final Map<String, Object> copy = new LinkedHashMap<>();
+            for (final Entry<String, Object> entry : ((Map<String, Object>) value).entrySet()) {
+                copy.put(entry.getKey(), deepCopy(entry.getValue()));
+            }
+            return copy;
+        }
+        if (value instanceof List) {
+            final List<Object> copy = new ArrayList<>();
+            for (final Object element : (List<Object>) value) {
+                copy.add(deepCopy(element));
+            }
+            return copy;
+        }
+        return value;
+    }
+
+    private static List<String> parsePointer(final String pointer) {
+        if (pointer.isEmpty()) {
+            return Collections.emptyList();
+        }
+        if (pointer.charAt(0) != '/') {
+            throw new ElasticsearchParseException("Invalid JSON pointer [{}]", pointer);
+        }
+        final List<String> segments = new ArrayList<>();
+        for (final String segment : pointer.substring(1).split("/", -1)) {
+            segments.add(segment.replace("~1", "/").replace("~0", "~"));
+        }
+        return segments;
+    }
+
+    private static String toPointer(final List<String> path) {
+        final StringBuilder sb = new StringBuilder();
+        for (final String segment : path) {
+            sb.append('/').append(segment.replace("~", "~0").replace("/", "~1"));
+        }
+        return sb.toString();
+    }
+}
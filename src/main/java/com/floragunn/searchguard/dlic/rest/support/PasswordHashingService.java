@@ -0,0 +1,224 @@
+/*
+ * Copyright 2016-2017 by floragunn GmbH - All rights reserved
+ *
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed here is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * This software is free of charge for non-commercial and academic use.
+ * For commercial use in a production environment you have to obtain a license
+ * from https://floragunn.com
+ *
+ */
+
+package com.floragunn.searchguard.dlic.rest.support;
+
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.bouncycastle.crypto.DataLengthException;
+import org.bouncycastle.crypto.generators.OpenBSDBCrypt;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.common.util.concurrent.AbstractRunnable;
+
+/**
+ * Computes bcrypt hashes for internal users off the request thread. Hashes are
+ * calculated on a bounded executor of the node so that several passwords
+ * (e.g. during bulk provisioning) are hashed in parallel without the
+ * management API being able to occupy all cores of a node.
+ */
+public class PasswordHashingService {
+
+    /**
+     * The bcrypt cost of new hashes. Search Guard has no setting for it and
+     * this module cannot register node settings of its own, so it is fixed.
+     * Hashes of other costs, e.g. created with hash.sh, are still accepted.
+     */
+    public static final int DEFAULT_COST = 12;
+
+    // SecureRandom is thread safe, seeding it once is expensive enough
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final int cost;
+    private final int parallelism;
+    private final Executor executor;
+
+    /**
+     * @param executor
+     *            a bounded executor that runs tasks on the thread pool of the
+     *            node
+     * @param parallelism
+     *            how many passwords of one {@link #hashAll} call are hashed at
+     *            the same time
+     * @param cost
+     *            the bcrypt cost of new hashes
+     */
+    public PasswordHashingService(final Executor executor, final int parallelism, final int cost) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        }
+        this.executor = Objects.requireNonNull(executor);
+        this.parallelism = parallelism;
+        this.cost = cost;
+    }
+
+    public int getCost() {
+        return cost;
+    }
+
+    /**
+     * Hashes the password on the calling thread with the configured cost.
+     * The password array is cleared afterwards.
+     */
+    public String hash(final char[] clearTextPassword) {
+        return hash(clearTextPassword, cost);
+    }
+
+    /**
+     * Hashes the password on the executor and notifies the listener on its
+     * thread. If the executor is saturated the listener receives the rejection.
+     */
+    public void hash(final char[] clearTextPassword, final ActionListener<String> listener) {
+        hash(clearTextPassword, null, listener);
+    }
+
+    /**
+     * Same as {@link #hash(char[], ActionListener)}, but returns the existing
+     * hash if it already matches the password. Re-submitting an unchanged
+     * password then leaves the stored configuration untouched. The password is
+     * only checked against hashes of the configured cost, others are replaced
+     * anyway, so the check never costs more than hashing.
+     */
+    public void hash(final char[] clearTextPassword, final String existingHash, final ActionListener<String> listener) {
+        executor.execute(new AbstractRunnable() {
+
+            @Override
+            protected void doRun() throws Exception {
+                if (matches(existingHash, clearTextPassword)) {
+                    Arrays.fill(clearTextPassword, '\0');
+                    listener.onResponse(existingHash);
+                } else {
+                    listener.onResponse(hash(clearTextPassword));
+                }
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                listener.onFailure(e);
+            }
+        });
+    }
+
+    /**
+     * Hashes all passwords, at most parallelism at the same time, so any number
+     * of passwords fits into the executor. The next password is submitted when
+     * one is complete. The listener receives the hashes in the order of the
+     * given passwords once all of them are complete, or the first failure.
+     */
+    public void hashAll(final List<char[]> clearTextPasswords, final ActionListener<List<String>> listener) {
+        hashAll(clearTextPasswords, null, listener);
+    }
+
+    /**
+     * Same as {@link #hashAll(List, ActionListener)}, keeping the existing hash
+     * at the same position of existingHashes if it matches. existingHashes may
+     * be null.
+     */
+    public void hashAll(final List<char[]> clearTextPasswords, final List<String> existingHashes, final ActionListener<List<String>> listener) {
+        final int count = clearTextPasswords.size();
+
+        if (count == 0) {
+            listener.onResponse(Collections.emptyList());
+            return;
+        }
+
+        final AtomicReferenceArray<String> hashes = new AtomicReferenceArray<>(count);
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicInteger remaining = new AtomicInteger(count);
+
+        final Runnable submitNext = new Runnable() {
+
+            @Override
+            public void run() {
+                final int index = next.getAndIncrement();
+                if (index >= count) {
+                    return;
+                }
+
+                hash(clearTextPasswords.get(index), existingHashes == null ? null : existingHashes.get(index), new ActionListener<String>() {
+
+                    @Override
+                    public void onResponse(String hash) {
+                        hashes.set(index, hash);
+                        final int left = remaining.decrementAndGet();
+                        if (left == 0) {
+                            final String[] result = new String[count];
+                            for (int j = 0; j < count; j++) {
+                                result[j] = hashes.get(j);
+                            }
+                            listener.onResponse(Arrays.asList(result));
+                        } else if (left > 0) {
+                            run();
+                        }
+                    }
+
+                    @Override
+                    public void onFailure(Exception e) {
+                        // make sure the listener is only notified once
+                        if (remaining.getAndSet(-1) > 0) {
+                            // passwords not submitted yet are not needed anymore
+                            for (int i = next.getAndSet(count); i < count; i++) {
+                                Arrays.fill(clearTextPasswords.get(i), '\0');
+                            }
+                            listener.onFailure(e);
+                        }
+                    }
+                });
+            }
+        };
+
+        for (int i = 0; i < Math.min(parallelism, count); i++) {
+            submitNext.run();
+        }
+    }
+
+    private boolean matches(final String hash, final char[] clearTextPassword) {
+        if (hash == null || getCost(hash) != cost) {
+            return false;
+        }
+        try {
+            return OpenBSDBCrypt.checkPassword(hash, clearTextPassword);
+        } catch (IllegalArgumentException | DataLengthException e) {
+            // not a bcrypt hash
+            return false;
+        }
+    }
+
+    /** the cost of a bcrypt hash like $2y$12$..., -1 if it is none */
+    private static int getCost(final String hash) {
+        if (hash.length() < 7 || hash.charAt(0) != '$' || hash.charAt(3) != '$' || hash.charAt(6) != '$') {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(hash.substring(4, 6));
+        } catch (final NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    public static String hash(final char[] clearTextPassword, final int cost) {
+        final byte[] salt = new byte[16];
+        RANDOM.nextBytes(salt);
+        final String hash = OpenBSDBCrypt.generate((Objects.requireNonNull(clearTextPassword)), salt, cost);
+        Arrays.fill(salt, (byte)0);
+        Arrays.fill(clearTextPassword, '\0');
+        return hash;
+    }
+}
@@ -15,11 +15,16 @@
 package com.floragunn.searchguard.dlic.rest.support;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 import org.elasticsearch.ElasticsearchParseException;
 import org.elasticsearch.ExceptionsHelper;
 import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.xcontent.NamedXContentRegistry;
 import org.elasticsearch.common.xcontent.ToXContent;
 import org.elasticsearch.common.xcontent.XContentBuilder;
@@ -42,6 +47,151 @@ public class Utils {
         return disabledEndpointsSettings;
     }
     
+    /**
+     * Converts the JSON source of a configuration to the same structured map
+     * {@link #convertJsonToxToStructuredMap(ToXContent)} returns for the
+     * {@link Settings} loaded from it. The source is read once, without
+     * building the settings and serializing them again.
+     */
+    public static Map<String, Object> convertSettingsJsonToStructuredMap(BytesReference json) {
+        // flattened keys in the order Settings iterates them
+        final Map<String, Object> flattened = new TreeMap<>();
+
+        try (XContentParser parser = XContentType.JSON.xContent().createParser(NamedXContentRegistry.EMPTY, json)) {
+            final XContentParser.Token token = parser.nextToken();
+            if (token == null) {
+                return new HashMap<>();
+            }
+            if (token != XContentParser.Token.START_OBJECT) {
+                throw new ElasticsearchParseException("malformed, expected settings to start with 'object', instead was [{}]", token);
+            }
+            flatten(parser, new StringBuilder(), flattened);
+        } catch (IOException e) {
+            throw new ElasticsearchParseException("Failed to parse settings", e);
+        }
+
+        final Map<String, Object> structured = new HashMap<>();
+        for (Map.Entry<String, Object> entry : flattened.entrySet()) {
+            nest(structured, "", entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<String, Object> entry : structured.entrySet()) {
+            entry.setValue(mapsToLists(entry.getValue()));
+        }
+        return structured;
+    }
+
+    /** dotted keys and string values like Settings loads JSON */
+    private static void flatten(XContentParser parser, StringBuilder key, Map<String, Object> flattened) throws IOException {
+        final int length = key.length();
+        XContentParser.Token token;
+        while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+            if (token == XContentParser.Token.FIELD_NAME) {
+                key.setLength(length);
+                key.append(parser.currentName());
+            } else if (token == XContentParser.Token.START_OBJECT) {
+                key.append('.');
+                flatten(parser, key, flattened);
+            } else if (token == XContentParser.Token.START_ARRAY) {
+                final List<String> values = new ArrayList<>();
+                while ((token = parser.nextToken()) != XContentParser.Token.END_ARRAY) {
+                    if (!token.isValue()) {
+                        throw new ElasticsearchParseException("only value lists are allowed in serialized settings");
+                    }
+                    values.add(parser.text());
+                }
+                put(flattened, key.toString(), values);
+            } else if (token == XContentParser.Token.VALUE_NULL) {
+                put(flattened, key.toString(), null);
+            } else {
+                put(flattened, key.toString(), parser.text());
+            }
+        }
+    }
+
+    private static void put(Map<String, Object> flattened, String key, Object value) {
+        if (flattened.containsKey(key)) {
+            throw new ElasticsearchParseException("duplicate settings key [{}] found, previous value [{}], current value [{}]", key,
+                    flattened.get(key), value);
+        }
+        flattened.put(key, value);
+    }
+
+    /** same rules as Settings uses for its structured map */
+    @SuppressWarnings("unchecked")
+    private static void nest(Map<String, Object> map, String prefix, String key, Object value) {
+        final int dot = key.indexOf('.');
+        if (dot == -1) {
+            final Object existing = map.get(prefix + key);
+            if (existing instanceof Map) {
+                // a value where a map is stored already, keep the map in dotted notation
+                for (Map.Entry<String, Object> entry : ((Map<String, Object>) existing).entrySet()) {
+                    map.put(prefix + key + "." + entry.getKey(), entry.getValue());
+                }
+            }
+            map.put(prefix + key, value);
+            return;
+        }
+
+        final String head = key.substring(0, dot);
+        final String rest = key.substring(dot + 1);
+        final Object existing = map.get(prefix + head);
+        if (existing == null) {
+            final Map<String, Object> inner = new HashMap<>(2);
+            nest(inner, "", rest, value);
+            map.put(prefix + head, inner);
+        } else if (existing instanceof Map) {
+            nest((Map<String, Object>) existing, "", rest, value);
+        } else {
+            // a map where a value is stored already, fall back to dotted notation
+            nest(map, prefix + head + ".", rest, value);
+        }
+    }
+
+    /** maps with the keys 0..n-1 become lists */
+    @SuppressWarnings("unchecked")
+    private static Object mapsToLists(Object value) {
+        if (!(value instanceof Map)) {
+            return value;
+        }
+        final Map<String, Object> map = (Map<String, Object>) value;
+        if (map.isEmpty()) {
+            return map;
+        }
+        boolean isList = true;
+        int maxIndex = -1;
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            if (isList) {
+                try {
+                    final int index = Integer.parseInt(entry.getKey());
+                    if (index >= 0) {
+                        maxIndex = Math.max(maxIndex, index);
+                    } else {
+                        isList = false;
+                    }
+                } catch (NumberFormatException e) {
+                    isList = false;
+                }
+            }
+            entry.setValue(mapsToLists(entry.getValue()));
+        }
+        if (isList && maxIndex + 1 == map.size()) {
+            final List<Object> list = new ArrayList<>(map.size());
+            for (int i = 0; i <= maxIndex; i++) {
+                final Object element = map.get(Integer.toString(i));
+                if (element == null) {
+                    return map;
+                }
+                list.add(element);
+            }
+            return list;
+        }
+        return map;
+    }
+
+    /**
+     * The way back for writes. The map is serialized as it is, without
+     * building {@link Settings} from it.
+     */
     public static BytesReference convertStructuredMapToBytes(Map<String, Object> structuredMap) {
         try {
             return JsonXContent.contentBuilder().map(structuredMap).bytes();
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2016-2017 by floragunn GmbH - All rights reserved
+ *
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed here is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * This software is free of charge for non-commercial and academic use.
+ * For commercial use in a production environment you have to obtain a license
+ * from https://floragunn.com
+ *
+ */
+package com.floragunn.searchguard.dlic.rest.api;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.concurrent.AbstractRunnable;
+import org.elasticsearch.common.util.concurrent.ThreadContext;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BoundedExecutorTest {
+
+	private final ExecutorService pool = Executors.newCachedThreadPool();
+	private final ThreadContext threadContext = new ThreadContext(Settings.EMPTY);
+
+	@After
+	public void tearDown() throws Exception {
+		pool.shutdownNow();
+		pool.awaitTermination(10, TimeUnit.SECONDS);
+	}
+
+	@Test
+	public void testRunningAndQueuedTasksAreBounded() throws Exception {
+		final BoundedExecutor executor = new BoundedExecutor("test", threadContext, pool, 2, 3);
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch completed = new CountDownLatch(5);
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger maxRunning = new AtomicInteger();
+		final AtomicInteger rejected = new AtomicInteger();
+
+		for (int i = 0; i < 6; i++) {
+			executor.execute(new AbstractRunnable() {
+
+				@Override
+				protected void doRun() throws Exception {
+					maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+					release.await();
+					running.decrementAndGet();
+					completed.countDown();
+				}
+
+				@Override
+				public void onFailure(Exception e) {
+				}
+
+				@Override
+				public void onRejection(Exception e) {
+					rejected.incrementAndGet();
+				}
+			});
+		}
+
+		// 2 running, 3 queued, the last one rejected right away
+		Assert.assertEquals(1, rejected.get());
+		Assert.assertEquals("{\"test\":{\"running\":2,\"max_running\":2,\"queue\":3,\"queue_size\":3,\"rejected\":1}}", stats(executor));
+
+		release.countDown();
+		Assert.assertTrue(completed.await(10, TimeUnit.SECONDS));
+		Assert.assertEquals(2, maxRunning.get());
+		// the workers return to the pool after the last task
+		final long deadline = System.currentTimeMillis() + 10000;
+		while (stats(executor).contains("\"running\":2") || stats(executor).contains("\"running\":1")) {
+			Assert.assertTrue(System.currentTimeMillis() < deadline);
+			Thread.sleep(10);
+		}
+		Assert.assertEquals("{\"test\":{\"running\":0,\"max_running\":2,\"queue\":0,\"queue_size\":3,\"rejected\":1}}", stats(executor));
+	}
+
+	@Test
+	public void testQueuedTasksKeepTheirThreadContext() throws Exception {
+		final BoundedExecutor executor = new BoundedExecutor("test", threadContext, pool, 1, 10);
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch completed = new CountDownLatch(3);
+		final List<Object> users = new CopyOnWriteArrayList<>();
+
+		for (int i = 0; i < 3; i++) {
+			try (ThreadContext.StoredContext ctx = threadContext.stashContext()) {
+				threadContext.putTransient("user", "user" + i);
+				executor.execute(() -> {
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					users.add(threadContext.getTransient("user"));
+					completed.countDown();
+				});
+			}
+		}
+
+		release.countDown();
+		Assert.assertTrue(completed.await(10, TimeUnit.SECONDS));
+		Assert.assertEquals("[user0, user1, user2]", users.toString());
+	}
+
+	private static String stats(final BoundedExecutor executor) throws Exception {
+		final XContentBuilder builder = XContentFactory.jsonBuilder();
+		builder.startObject();
+		executor.stats(builder);
+		builder.endObject();
+		return builder.string();
+	}
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2016-2017 by floragunn GmbH - All rights reserved
+ *
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed here is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * This software is free of charge for non-commercial and academic use.
+ * For commercial use in a production environment you have to obtain a license
+ * from https://floragunn.com
+ *
+ */
+package com.floragunn.searchguard.dlic.rest.api;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.elasticsearch.Version;
+import org.elasticsearch.cluster.ClusterChangedEvent;
+import org.elasticsearch.cluster.ClusterName;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.cluster.metadata.MetaData;
+import org.elasticsearch.common.settings.Settings;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.floragunn.searchguard.support.ConfigConstants;
+
+public class ConfigIndexStateTest {
+
+	private static final String INDEX = ConfigConstants.SG_DEFAULT_CONFIG_INDEX;
+
+	@Test
+	public void testClusterStateFallback() throws Exception {
+		final ConfigIndexState indexState = new ConfigIndexState(INDEX, () -> state(true));
+
+		// nothing applied yet, read from the current cluster state
+		Assert.assertTrue(indexState.indexExists());
+		Assert.assertEquals("config", indexState.type("config"));
+		Assert.assertEquals("0", indexState.id("config"));
+	}
+
+	@Test
+	public void testAppliedStateWinsOverFallback() throws Exception {
+		final ClusterState stale = state(false);
+		final ClusterState applied = state(true);
+		final AtomicReference<ConfigIndexState> holder = new AtomicReference<>();
+
+		final ConfigIndexState indexState = new ConfigIndexState(INDEX, () -> {
+			// a newer cluster state is applied while the fallback reads the old one
+			holder.get().clusterChanged(new ClusterChangedEvent("test", applied, stale));
+			return stale;
+		});
+		holder.set(indexState);
+
+		Assert.assertTrue(indexState.indexExists());
+		Assert.assertEquals("config", indexState.type("config"));
+	}
+
+	@Test
+	public void testMetaDataChanges() throws Exception {
+		final ClusterState missing = state(false);
+		final ClusterState created = state(true);
+		final ConfigIndexState indexState = new ConfigIndexState(INDEX, () -> missing);
+
+		indexState.clusterChanged(new ClusterChangedEvent("test", missing, missing));
+		Assert.assertFalse(indexState.indexExists());
+		Assert.assertEquals("sg", indexState.type("config"));
+		Assert.assertEquals("config", indexState.id("config"));
+
+		indexState.clusterChanged(new ClusterChangedEvent("test", created, missing));
+		Assert.assertTrue(indexState.indexExists());
+
+		indexState.clusterChanged(new ClusterChangedEvent("test", missing, created));
+		Assert.assertFalse(indexState.indexExists());
+	}
+
+	private static ClusterState state(final boolean withIndex) throws Exception {
+		final MetaData.Builder metaData = MetaData.builder();
+		if (withIndex) {
+			metaData.put(IndexMetaData.builder(INDEX)
+					.settings(Settings.builder().put(IndexMetaData.SETTING_VERSION_CREATED, Version.CURRENT))
+					.numberOfShards(1)
+					.numberOfReplicas(0)
+					.putMapping("config", "{\"config\":{}}"), false);
+		}
+		return ClusterState.builder(new ClusterName("test")).metaData(metaData).build();
+	}
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2016-2017 by floragunn GmbH - All rights reserved
+ *
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed here is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * This software is free of charge for non-commercial and academic use.
+ * For commercial use in a production environment you have to obtain a license
+ * from https://floragunn.com
+ *
+ */
+package com.floragunn.searchguard.dlic.rest.api;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.http.Header;
+import org.apache.http.HttpStatus;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.floragunn.searchguard.test.helper.rest.RestHelper.HttpResponse;
+
+public class ConfigWatchApiTest extends AbstractRestApiUnitTest {
+
+	@Test
+	public void testWatch() throws Exception {
+
+		setup();
+
+		rh.keystore = "kirk-keystore.jks";
+		rh.sendHTTPClientCertificate = true;
+
+		// without a version the current versions are returned immediately
+		HttpResponse response = rh.executeGetRequest("/_searchguard/api/_watch?types=roles");
+		Assert.assertEquals(response.getBody(), HttpStatus.SC_OK, response.getStatusCode());
+		JsonNode body = new ObjectMapper().readTree(response.getBody());
+		Assert.assertFalse(body.get("timed_out").asBoolean());
+		final long version = body.get("versions").get("roles").asLong();
+		Assert.assertEquals(version, body.get("changed").get("roles").asLong());
+		Assert.assertNull(body.get("versions").get("internalusers"));
+
+		// nothing changes
+		response = rh.executeGetRequest("/_searchguard/api/_watch?types=roles&since=" + version + "&timeout=1s");
+		Assert.assertEquals(response.getBody(), HttpStatus.SC_OK, response.getStatusCode());
+		body = new ObjectMapper().readTree(response.getBody());
+		Assert.assertTrue(body.get("timed_out").asBoolean());
+		Assert.assertEquals(0, body.get("changed").size());
+
+		// a change answers the waiting request
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			final Future<HttpResponse> watch = executor.submit(
+					() -> rh.executeGetRequest("/_searchguard/api/_watch?types=roles&since=roles:" + version + "&timeout=30s"));
+			Thread.sleep(1000);
+			response = rh.executePutRequest("/_searchguard/api/roles/sg_role_watched", "{\"cluster\": [\"*\"]}", new Header[0]);
+			Assert.assertEquals(response.getBody(), HttpStatus.SC_CREATED, response.getStatusCode());
+
+			response = watch.get();
+			Assert.assertEquals(response.getBody(), HttpStatus.SC_OK, response.getStatusCode());
+			body = new ObjectMapper().readTree(response.getBody());
+			Assert.assertFalse(body.get("timed_out").asBoolean());
+			Assert.assertTrue(body.get("changed").get("roles").asLong() > version);
+		} finally {
+			executor.shutdown();
+		}
+
+		response = rh.executeGetRequest("/_searchguard/api/_watch?types=nothinghere");
+		Assert.assertEquals(HttpStatus.SC_BAD_REQUEST, response.getStatusCode());
+		response = rh.executeGetRequest("/_searchguard/api/_watch?since=abc");
+		Assert.assertEquals(HttpStatus.SC_BAD_REQUEST, response.getStatusCode());
+		response = rh.executeGetRequest("/_searchguard/api/_watch?timeout=1h");
+		Assert.assertEquals(HttpStatus.SC_BAD_REQUEST, response.getStatusCode());
+	}
+}
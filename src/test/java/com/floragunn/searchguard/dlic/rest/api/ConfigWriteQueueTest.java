@@ -0,0 +1,161 @@
+/*
+ * Copyright 2016-2017 by floragunn GmbH - All rights reserved
+ *
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed here is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * This software is free of charge for non-commercial and academic use.
+ * For commercial use in a production environment you have to obtain a license
+ * from https://floragunn.com
+ *
+ */
+package com.floragunn.searchguard.dlic.rest.api;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.lucene.uid.Versions;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.rest.RestStatus;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ConfigWriteQueueTest {
+
+	private static class InMemoryQueue extends ConfigWriteQueue {
+
+		private volatile Settings settings = Settings.EMPTY;
+		private volatile long version = 1;
+		private final AtomicInteger writes = new AtomicInteger();
+		private final CountDownLatch firstWrite = new CountDownLatch(1);
+		private final CountDownLatch release = new CountDownLatch(1);
+
+		InMemoryQueue(final ExecutorService executor) {
+			super("roles", null, executor, ConfigWriteQueue.DEFAULT_WINDOW, ConfigWriteQueue.DEFAULT_MAX_OPERATIONS);
+		}
+
+		@Override
+		protected void load(final ActionListener<ConfigDocument> listener) {
+			listener.onResponse(new ConfigDocument("roles", settings, version));
+		}
+
+		@Override
+		protected void write(final BytesReference source, final long expectedVersion, final ActionListener<IndexResponse> listener) {
+			if (writes.incrementAndGet() == 1) {
+				// hold the first write so that further mutations queue up
+				firstWrite.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			settings = Settings.builder().loadFromSource(source.utf8ToString(), XContentType.JSON).build();
+			version = expectedVersion + 1;
+			listener.onResponse(new IndexResponse(new ShardId("searchguard", "_na_", 0), "roles", "0", 0, 1, version, false));
+		}
+	}
+
+	@Test
+	public void testMutationsAreWrittenTogether() throws Exception {
+		final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+		try {
+			final InMemoryQueue queue = new InMemoryQueue(executor);
+			final int count = 10;
+			final CountDownLatch answered = new CountDownLatch(count);
+			final List<RestStatus> statuses = new ArrayList<>();
+
+			final ConfigWriteQueue.Callback callback = new ConfigWriteQueue.Callback() {
+
+				@Override
+				public void onResult(final ConfigMutation.Result result, final long version) {
+					synchronized (statuses) {
+						statuses.add(result.getStatus());
+					}
+					answered.countDown();
+				}
+
+				@Override
+				public void onFailure(final Exception e) {
+					Assert.fail(e.toString());
+				}
+			};
+
+			for (int i = 0; i < count; i++) {
+				final String name = "role" + i;
+				queue.submit(config -> {
+					config.put(name, new ArrayList<Object>());
+					return ConfigMutation.Result.write(RestStatus.CREATED, name);
+				}, Versions.MATCH_ANY, callback);
+
+				if (i == 0) {
+					Assert.assertTrue(queue.firstWrite.await(10, TimeUnit.SECONDS));
+				}
+			}
+
+			queue.release.countDown();
+			Assert.assertTrue(answered.await(10, TimeUnit.SECONDS));
+
+			// the first write, then one for all mutations that arrived meanwhile
+			Assert.assertEquals(2, queue.writes.get());
+			Assert.assertEquals(3, queue.version);
+			for (final RestStatus status : statuses) {
+				Assert.assertEquals(RestStatus.CREATED, status);
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testExpectedVersion() throws Exception {
+		final ExecutorService executor = Executors.newFixedThreadPool(1);
+
+		try {
+			final InMemoryQueue queue = new InMemoryQueue(executor);
+			queue.writes.incrementAndGet();
+			queue.release.countDown();
+
+			final CountDownLatch answered = new CountDownLatch(2);
+			final List<RestStatus> statuses = new ArrayList<>();
+
+			final ConfigWriteQueue.Callback callback = new ConfigWriteQueue.Callback() {
+
+				@Override
+				public void onResult(final ConfigMutation.Result result, final long version) {
+					synchronized (statuses) {
+						statuses.add(result.getStatus());
+					}
+					answered.countDown();
+				}
+
+				@Override
+				public void onFailure(final Exception e) {
+					Assert.fail(e.toString());
+				}
+			};
+
+			queue.submit(config -> ConfigMutation.Result.write(RestStatus.OK, "updated"), 1, callback);
+			queue.submit(config -> ConfigMutation.Result.write(RestStatus.OK, "updated"), 1, callback);
+
+			Assert.assertTrue(answered.await(10, TimeUnit.SECONDS));
+			Assert.assertEquals(RestStatus.OK, statuses.get(0));
+			Assert.assertEquals(RestStatus.CONFLICT, statuses.get(1));
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
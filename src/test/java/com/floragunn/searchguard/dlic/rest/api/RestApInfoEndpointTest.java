@@ -46,6 +46,10 @@ public class RestApInfoEndpointTest extends AbstractRestApiUnitTest {
 		Assert.assertEquals(disabled.getAsList(Endpoint.CONFIGURATION.name()).size(), Method.values().length);
 		Assert.assertEquals(disabled.getAsList(Endpoint.ROLESMAPPING.name()).size(), 2);
 
+		// load of the REST API executors
+		Assert.assertEquals("0", settings.get("executors.sg_rest_management.rejected"));
+		Assert.assertEquals("1000", settings.get("executors.sg_password_hashing.queue_size"));
+
 		
 		tearDown();
 	}
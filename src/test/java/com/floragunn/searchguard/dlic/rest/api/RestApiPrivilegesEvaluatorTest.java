@@ -0,0 +1,315 @@
+/*
+ * Copyright 2016-2017 by floragunn GmbH - All rights reserved
+ *
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed here is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * This software is free of charge for non-commercial and academic use.
+ * For commercial use in a production environment you have to obtain a license
+ * from https://floragunn.com
+ *
+ */
+package com.floragunn.searchguard.dlic.rest.api;
+
+import java.lang.reflect.Proxy;
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.net.ssl.SSLSession;
+
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.transport.TransportAddress;
+import org.elasticsearch.rest.RestRequest.Method;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.floragunn.searchguard.dlic.rest.api.RestApiPrivilegesEvaluator.AdminCertDecision;
+import com.floragunn.searchguard.dlic.rest.api.RestApiPrivilegesEvaluator.RolesMappingKey;
+import com.floragunn.searchguard.support.ConfigConstants;
+import com.floragunn.searchguard.user.User;
+
+public class RestApiPrivilegesEvaluatorTest {
+
+	private static final Set<String> KLINGONS = Collections.singleton("sg_role_klingons");
+	private static final Set<String> VULCANS = Collections.singleton("sg_role_vulcans");
+
+	private static final Settings NODE_SETTINGS = Settings.builder()
+			.put(ConfigConstants.SEARCHGUARD_RESTAPI_ROLES_ENABLED + ".0", "sg_role_klingons")
+			.put(ConfigConstants.SEARCHGUARD_RESTAPI_ENDPOINTS_DISABLED + ".sg_role_klingons.LICENSE.0", "*")
+			.build();
+
+	@Test
+	public void testDisabledEndpointsMatchListBasedEvaluation() throws Exception {
+		final Settings settings = Settings.builder()
+				.putList(ConfigConstants.SEARCHGUARD_RESTAPI_ROLES_ENABLED, "r1", "r2", "r3", "r4")
+				.put(ConfigConstants.SEARCHGUARD_RESTAPI_ENDPOINTS_DISABLED + ".global.CACHE.0", "*")
+				.put(ConfigConstants.SEARCHGUARD_RESTAPI_ENDPOINTS_DISABLED + ".r1.LICENSE.0", "*")
+				.putList(ConfigConstants.SEARCHGUARD_RESTAPI_ENDPOINTS_DISABLED + ".r1.ROLESMAPPING", "PUT", "DELETE")
+				.putList(ConfigConstants.SEARCHGUARD_RESTAPI_ENDPOINTS_DISABLED + ".r1.CONFIGURATION", "GET")
+				.putList(ConfigConstants.SEARCHGUARD_RESTAPI_ENDPOINTS_DISABLED + ".r2.LICENSE", "GET")
+				.putList(ConfigConstants.SEARCHGUARD_RESTAPI_ENDPOINTS_DISABLED + ".r2.ROLESMAPPING", "DELETE", "POST")
+				.putList(ConfigConstants.SEARCHGUARD_RESTAPI_ENDPOINTS_DISABLED + ".r4.SGCONFIG", "*")
+				.putList(ConfigConstants.SEARCHGUARD_RESTAPI_ENDPOINTS_DISABLED + ".r4.ROLES", "PUT")
+				.build();
+
+		// the same configuration as parsed before endpoints were kept in EnumSets
+		final Map<String, Map<Endpoint, List<Method>>> disabledForRoles = new HashMap<>();
+		disabledForRoles.put("r1", new HashMap<>());
+		disabledForRoles.get("r1").put(Endpoint.LICENSE, Arrays.asList(Method.values()));
+		disabledForRoles.get("r1").put(Endpoint.ROLESMAPPING, Arrays.asList(Method.PUT, Method.DELETE));
+		disabledForRoles.get("r1").put(Endpoint.CONFIGURATION, Arrays.asList(Method.GET));
+		disabledForRoles.put("r2", new HashMap<>());
+		disabledForRoles.get("r2").put(Endpoint.LICENSE, Arrays.asList(Method.GET));
+		disabledForRoles.get("r2").put(Endpoint.ROLESMAPPING, Arrays.asList(Method.DELETE, Method.POST));
+		disabledForRoles.put("r4", new HashMap<>());
+		disabledForRoles.get("r4").put(Endpoint.SGCONFIG, Arrays.asList(Method.values()));
+		disabledForRoles.get("r4").put(Endpoint.ROLES, Arrays.asList(Method.PUT));
+		final Map<Endpoint, List<Method>> globallyDisabled = Collections.singletonMap(Endpoint.CACHE, Arrays.asList(Method.values()));
+		final Set<String> enabledRoles = new HashSet<>(Arrays.asList("r1", "r2", "r3", "r4"));
+
+		final RestApiPrivilegesEvaluator evaluator = new RestApiPrivilegesEvaluator(settings, null, null, null, null, null, null);
+
+		final List<Set<String>> roleSets = Arrays.asList(roles("r1"), roles("r2"), roles("r3"), roles("r4"), roles("r1", "r2"),
+				roles("r1", "r3"), roles("r2", "r4"), roles("r1", "r2", "r4"), roles("r1", "r5"), roles("r5"), roles());
+
+		for (final Set<String> roleSet : roleSets) {
+			final Map<Endpoint, Set<Method>> disabled = evaluator.getDisabledEndpointsForCurrentUser("user", roleSet);
+			final Map<Endpoint, List<Method>> expected = listBasedDisabledEndpoints(enabledRoles, disabledForRoles, globallyDisabled, roleSet);
+			for (final Endpoint endpoint : Endpoint.values()) {
+				for (final Method method : Method.values()) {
+					Assert.assertEquals(roleSet + " " + endpoint + " " + method, isAllowed(expected.get(endpoint), method),
+							isAllowed(disabled.get(endpoint), method));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testUsersWithSameRolesShareDisabledEndpoints() throws Exception {
+		final Settings settings = Settings.builder()
+				.putList(ConfigConstants.SEARCHGUARD_RESTAPI_ROLES_ENABLED, "r1", "r2")
+				.putList(ConfigConstants.SEARCHGUARD_RESTAPI_ENDPOINTS_DISABLED + ".r1.LICENSE", "GET")
+				.putList(ConfigConstants.SEARCHGUARD_RESTAPI_ENDPOINTS_DISABLED + ".r2.LICENSE", "GET", "PUT")
+				.build();
+		final RestApiPrivilegesEvaluator evaluator = new RestApiPrivilegesEvaluator(settings, null, null, null, null, null, null);
+
+		// evaluated once per role set, whatever the user and the order of the roles
+		final Map<Endpoint, Set<Method>> kirk = evaluator.getDisabledEndpointsForCurrentUser("kirk", new LinkedHashSet<>(Arrays.asList("r1", "r2")));
+		final Map<Endpoint, Set<Method>> spock = evaluator.getDisabledEndpointsForCurrentUser("spock", new LinkedHashSet<>(Arrays.asList("r2", "r1")));
+		Assert.assertSame(kirk, spock);
+		Assert.assertEquals(EnumSet.of(Method.GET), kirk.get(Endpoint.LICENSE));
+
+		final Map<Endpoint, Set<Method>> worf = evaluator.getDisabledEndpointsForCurrentUser("worf", roles("r2"));
+		Assert.assertNotSame(kirk, worf);
+		Assert.assertEquals(EnumSet.of(Method.GET, Method.PUT), worf.get(Endpoint.LICENSE));
+	}
+
+	@Test
+	public void testRolesMappingKeyIgnoresPort() throws Exception {
+		final User kirk = new User("kirk");
+		kirk.addRole("captain");
+		final InetAddress address = InetAddress.getByName("10.0.0.1");
+
+		// two connections of the same client share one cached mapping
+		final RolesMappingKey key = new RolesMappingKey(kirk, new TransportAddress(address, 50001));
+		final RolesMappingKey otherPort = new RolesMappingKey(kirk, new TransportAddress(address, 50002));
+		Assert.assertEquals(key, otherPort);
+		Assert.assertEquals(key.hashCode(), otherPort.hashCode());
+
+		Assert.assertNotEquals(key, new RolesMappingKey(kirk, new TransportAddress(InetAddress.getByName("10.0.0.2"), 50001)));
+		Assert.assertNotEquals(key, new RolesMappingKey(new User("kirk"), new TransportAddress(address, 50001)));
+	}
+
+	@Test
+	public void testAdminCertDecisionIsReusedForValidSessionOnly() throws Exception {
+		final RestApiPrivilegesEvaluator evaluator = new RestApiPrivilegesEvaluator(NODE_SETTINGS, null, null, null, null, null, null);
+		final AtomicBoolean valid = new AtomicBoolean(true);
+		final SSLSession session = session(valid);
+		final long notAfter = System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1);
+
+		Assert.assertNull(evaluator.cachedAdminCertDecision(session));
+		final AdminCertDecision decision = evaluator.cacheAdminCertDecision(session, null, notAfter);
+		// further requests over the same session
+		Assert.assertSame(decision, evaluator.cachedAdminCertDecision(session));
+		Assert.assertSame(decision, evaluator.cachedAdminCertDecision(session));
+		// another session checks its certificate again
+		Assert.assertNull(evaluator.cachedAdminCertDecision(session(new AtomicBoolean(true))));
+
+		// e.g. renegotiated or closed
+		valid.set(false);
+		Assert.assertNull(evaluator.cachedAdminCertDecision(session));
+
+		// the certificate expired
+		final SSLSession expired = session(new AtomicBoolean(true));
+		evaluator.cacheAdminCertDecision(expired, null, System.currentTimeMillis() - 1);
+		Assert.assertNull(evaluator.cachedAdminCertDecision(expired));
+	}
+
+	@Test
+	public void testCertCheckFirstForKnownAdminSessionOnly() throws Exception {
+		final RestApiPrivilegesEvaluator evaluator = new RestApiPrivilegesEvaluator(NODE_SETTINGS, null, null, null, null, null, null);
+		final SSLSession admin = session(new AtomicBoolean(true));
+		final SSLSession user = session(new AtomicBoolean(true));
+		final long notAfter = System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1);
+
+		// unknown sessions start with the roles
+		Assert.assertFalse(evaluator.isKnownAdminSession(admin));
+
+		evaluator.cacheAdminCertDecision(admin, null, notAfter);
+		evaluator.cacheAdminCertDecision(user, () -> "not an admin", notAfter);
+		Assert.assertTrue(evaluator.isKnownAdminSession(admin));
+		Assert.assertFalse(evaluator.isKnownAdminSession(user));
+
+		admin.invalidate();
+		Assert.assertFalse(evaluator.isKnownAdminSession(admin));
+	}
+
+	@Test
+	public void testDisabledEndpointsTiming() throws Exception {
+		final Settings settings = Settings.builder()
+				.putList(ConfigConstants.SEARCHGUARD_RESTAPI_ROLES_ENABLED, "r1", "r2")
+				.put(ConfigConstants.SEARCHGUARD_RESTAPI_ENDPOINTS_DISABLED + ".global.CACHE.0", "*")
+				.putList(ConfigConstants.SEARCHGUARD_RESTAPI_ENDPOINTS_DISABLED + ".r1.LICENSE", "GET", "PUT")
+				.putList(ConfigConstants.SEARCHGUARD_RESTAPI_ENDPOINTS_DISABLED + ".r1.ROLESMAPPING", "PUT", "DELETE")
+				.putList(ConfigConstants.SEARCHGUARD_RESTAPI_ENDPOINTS_DISABLED + ".r2.LICENSE", "GET")
+				.putList(ConfigConstants.SEARCHGUARD_RESTAPI_ENDPOINTS_DISABLED + ".r2.ROLESMAPPING", "DELETE", "POST")
+				.build();
+		final Map<String, Map<Endpoint, List<Method>>> disabledForRoles = new HashMap<>();
+		disabledForRoles.put("r1", new HashMap<>());
+		disabledForRoles.get("r1").put(Endpoint.LICENSE, Arrays.asList(Method.GET, Method.PUT));
+		disabledForRoles.get("r1").put(Endpoint.ROLESMAPPING, Arrays.asList(Method.PUT, Method.DELETE));
+		disabledForRoles.put("r2", new HashMap<>());
+		disabledForRoles.get("r2").put(Endpoint.LICENSE, Arrays.asList(Method.GET));
+		disabledForRoles.get("r2").put(Endpoint.ROLESMAPPING, Arrays.asList(Method.DELETE, Method.POST));
+		final Map<Endpoint, List<Method>> globallyDisabled = Collections.singletonMap(Endpoint.CACHE, Arrays.asList(Method.values()));
+		final Set<String> enabledRoles = roles("r1", "r2");
+		final Set<String> userRoles = roles("r1", "r2", "r3");
+
+		final RestApiPrivilegesEvaluator evaluator = new RestApiPrivilegesEvaluator(settings, null, null, null, null, null, null);
+		final int iterations = 100000;
+		int allowed = 0;
+
+		// warm up both paths before measuring
+		for (int i = 0; i < iterations; i++) {
+			allowed += isAllowed(listBasedDisabledEndpoints(enabledRoles, disabledForRoles, globallyDisabled, userRoles).get(Endpoint.LICENSE), Method.PUT) ? 1 : 0;
+			allowed += isAllowed(evaluator.getDisabledEndpointsForCurrentUser("user", userRoles).get(Endpoint.LICENSE), Method.PUT) ? 1 : 0;
+		}
+
+		long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			allowed += isAllowed(listBasedDisabledEndpoints(enabledRoles, disabledForRoles, globallyDisabled, userRoles).get(Endpoint.LICENSE), Method.PUT) ? 1 : 0;
+		}
+		final long listBased = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			allowed += isAllowed(evaluator.getDisabledEndpointsForCurrentUser("user", userRoles).get(Endpoint.LICENSE), Method.PUT) ? 1 : 0;
+		}
+		final long current = System.nanoTime() - start;
+
+		// PUT on LICENSE is only disabled for r1, so it is allowed every time
+		Assert.assertEquals(4 * iterations, allowed);
+		System.out.println("Disabled endpoints for " + iterations + " requests: lists " + TimeUnit.NANOSECONDS.toMillis(listBased)
+				+ " ms, cached EnumSets " + TimeUnit.NANOSECONDS.toMillis(current) + " ms");
+	}
+
+	@Test
+	public void testNodeRoleSettings() throws Exception {
+		final RestApiPrivilegesEvaluator evaluator = new RestApiPrivilegesEvaluator(NODE_SETTINGS, null, null, null, null, null, null);
+
+		Assert.assertTrue(evaluator.currentUserHasRestApiAccess(KLINGONS));
+		Assert.assertFalse(evaluator.currentUserHasRestApiAccess(VULCANS));
+		Assert.assertTrue(evaluator.getDisabledEndpointsForCurrentUser("worf", KLINGONS).get(Endpoint.LICENSE).contains(Method.GET));
+		// no access at all
+		Assert.assertEquals(EnumSet.allOf(Method.class), evaluator.getDisabledEndpointsForCurrentUser("spock", VULCANS).get(Endpoint.ROLES));
+	}
+
+	/** a TLS session that is valid as long as the flag is set */
+	private static SSLSession session(final AtomicBoolean valid) {
+		return (SSLSession) Proxy.newProxyInstance(SSLSession.class.getClassLoader(), new Class<?>[] { SSLSession.class }, (proxy, method, args) -> {
+			switch (method.getName()) {
+			case "isValid":
+				return valid.get();
+			case "invalidate":
+				valid.set(false);
+				return null;
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			case "equals":
+				return proxy == args[0];
+			case "toString":
+				return "session";
+			default:
+				throw new UnsupportedOperationException(method.getName());
+			}
+		});
+	}
+
+	private static Set<String> roles(final String... roles) {
+		return new HashSet<>(Arrays.asList(roles));
+	}
+
+	private static boolean isAllowed(final Collection<Method> disabledMethods, final Method method) {
+		return disabledMethods == null || !disabledMethods.contains(method);
+	}
+
+	/** the evaluation with lists of methods per endpoint, as it was before EnumSets */
+	private static Map<Endpoint, List<Method>> listBasedDisabledEndpoints(final Set<String> enabledRoles,
+			final Map<String, Map<Endpoint, List<Method>>> disabledEndpointsForRoles, final Map<Endpoint, List<Method>> globallyDisabledEndpoints,
+			final Set<String> userRoles) {
+
+		final Map<Endpoint, List<Method>> finalEndpoints = new HashMap<>();
+
+		if (Collections.disjoint(enabledRoles, userRoles)) {
+			for (final Endpoint endpoint : Endpoint.values()) {
+				finalEndpoints.put(endpoint, Arrays.asList(Method.values()));
+			}
+			return finalEndpoints;
+		}
+
+		final List<Endpoint> remainingEndpoints = new LinkedList<>(Arrays.asList(Endpoint.values()));
+		boolean hasDisabledEndpoints = false;
+		for (final String userRole : userRoles) {
+			final Map<Endpoint, List<Method>> endpointsForRole = disabledEndpointsForRoles.get(userRole);
+			if (endpointsForRole == null || endpointsForRole.isEmpty()) {
+				continue;
+			}
+			remainingEndpoints.retainAll(endpointsForRole.keySet());
+			hasDisabledEndpoints = true;
+		}
+
+		if (hasDisabledEndpoints) {
+			for (final Endpoint endpoint : remainingEndpoints) {
+				final List<Method> remainingMethodsForEndpoint = new LinkedList<>(Arrays.asList(Method.values()));
+				for (final String userRole : userRoles) {
+					final Map<Endpoint, List<Method>> endpoints = disabledEndpointsForRoles.get(userRole);
+					if (endpoints != null && !endpoints.isEmpty()) {
+						remainingMethodsForEndpoint.retainAll(endpoints.get(endpoint));
+					}
+				}
+				finalEndpoints.put(endpoint, remainingMethodsForEndpoint);
+			}
+		}
+
+		for (final Entry<Endpoint, List<Method>> global : globallyDisabledEndpoints.entrySet()) {
+			finalEndpoints.putIfAbsent(global.getKey(), new LinkedList<>());
+			finalEndpoints.get(global.getKey()).addAll(global.getValue());
+		}
+		return finalEndpoints;
+	}
+}
@@ -14,9 +14,11 @@
 
 package com.floragunn.searchguard.dlic.rest.api;
 
+import org.apache.http.Header;
 import org.apache.http.HttpStatus;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.rest.RestRequest.Method;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -121,6 +123,11 @@ public class RoleBasedAccessTest extends AbstractRestApiUnitTest {
 		Assert.assertEquals(HttpStatus.SC_FORBIDDEN, response.getStatusCode());
 		Assert.assertTrue(response.getBody().contains("does not have any access to endpoint CONFIGURATION"));
 
+		// bulk needs PUT and DELETE, both are disabled on rolesmapping for worf
+		response = rh.executePostRequest("/_searchguard/api/rolesmapping/_bulk", "{\"delete\": {\"_id\": \"sg_all_access\"}}\n", encodeBasicHeader("worf", "worf"));
+		Assert.assertEquals(HttpStatus.SC_FORBIDDEN, response.getStatusCode());
+		Assert.assertTrue(response.getBody().contains("does not have any access to endpoint ROLESMAPPING and method PUT"));
+
 		// cache API, not accessible for worf since it's disabled globally
 		response = rh.executeDeleteRequest("_searchguard/api/cache", encodeBasicHeader("worf", "worf"));
 		Assert.assertEquals(HttpStatus.SC_FORBIDDEN, response.getStatusCode());
@@ -268,4 +275,46 @@ public class RoleBasedAccessTest extends AbstractRestApiUnitTest {
 		
 
 	}
+
+	@Test
+	public void testRolesMappingReload() throws Exception {
+
+		setupWithRestRoles();
+
+		rh.sendHTTPClientCertificate = false;
+
+		// worf only has sg_role_klingons, which cannot access the license
+		HttpResponse response = rh.executeGetRequest("_searchguard/api/license", encodeBasicHeader("worf", "worf"));
+		Assert.assertEquals(HttpStatus.SC_FORBIDDEN, response.getStatusCode());
+		response = rh.executeGetRequest("/_searchguard/api/permissionsinfo", encodeBasicHeader("worf", "worf"));
+		Settings settings = Settings.builder().loadFromSource(response.getBody(), XContentType.JSON).build();
+		Assert.assertEquals(Method.values().length, settings.getAsList("disabled_endpoints." + Endpoint.LICENSE.name()).size());
+
+		// map worf to sg_role_vulcans as well, which can
+		rh.sendHTTPClientCertificate = true;
+		response = rh.executePutRequest("/_searchguard/api/rolesmapping/sg_role_vulcans",
+				"{\"backendroles\": [\"vulcangov\"], \"users\": [\"kirk\", \"sarek\", \"worf\"]}", new Header[0]);
+		Assert.assertEquals(response.getBody(), HttpStatus.SC_OK, response.getStatusCode());
+		rh.sendHTTPClientCertificate = false;
+
+		// the cached roles of worf and the disabled endpoints of his role set
+		// are not used anymore
+		response = rh.executeGetRequest("_searchguard/api/license", encodeBasicHeader("worf", "worf"));
+		Assert.assertEquals(HttpStatus.SC_OK, response.getStatusCode());
+		response = rh.executeGetRequest("/_searchguard/api/permissionsinfo", encodeBasicHeader("worf", "worf"));
+		settings = Settings.builder().loadFromSource(response.getBody(), XContentType.JSON).build();
+		Assert.assertTrue(settings.getAsList("disabled_endpoints." + Endpoint.LICENSE.name()).isEmpty());
+
+		// and no REST API access at all without the klingons mapping
+		rh.sendHTTPClientCertificate = true;
+		response = rh.executeDeleteRequest("/_searchguard/api/rolesmapping/sg_role_klingons", new Header[0]);
+		Assert.assertEquals(response.getBody(), HttpStatus.SC_OK, response.getStatusCode());
+		response = rh.executePutRequest("/_searchguard/api/rolesmapping/sg_role_vulcans",
+				"{\"backendroles\": [\"vulcangov\"], \"users\": [\"kirk\", \"sarek\"]}", new Header[0]);
+		Assert.assertEquals(response.getBody(), HttpStatus.SC_OK, response.getStatusCode());
+		rh.sendHTTPClientCertificate = false;
+
+		response = rh.executeGetRequest("/_searchguard/api/roles/", encodeBasicHeader("worf", "worf"));
+		Assert.assertEquals(HttpStatus.SC_FORBIDDEN, response.getStatusCode());
+	}
 }
@@ -14,17 +14,25 @@
 
 package com.floragunn.searchguard.dlic.rest.api;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 import org.apache.http.Header;
 import org.apache.http.HttpStatus;
+import org.apache.http.message.BasicHeader;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.xcontent.XContentType;
 import org.junit.Assert;
 import org.junit.Test;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.floragunn.searchguard.dlic.rest.support.Utils;
 import com.floragunn.searchguard.dlic.rest.validation.AbstractConfigurationValidator;
 import com.floragunn.searchguard.dlic.rest.validation.AbstractConfigurationValidator.ErrorType;
@@ -245,4 +253,374 @@ public class RolesApiTest extends AbstractRestApiUnitTest {
 		Assert.assertEquals(settings.get("status"), "error");
 		Assert.assertEquals(settings.get("reason"), ErrorType.INVALID_CONFIGURATION.getMessage());
 	}
+	@Test
+	public void testRolesBulkApi() throws Exception {
+
+		setup();
+
+		rh.keystore = "kirk-keystore.jks";
+		rh.sendHTTPClientCertificate = true;
+
+		final String bulk =
+				"{\"create\": {\"_id\": \"bulk_role1\"}}\n" + "{\"cluster\": [\"cluster:monitor*\"]}\n" +
+				"{\"index\": {\"_id\": \"bulk_role2\"}}\n" + "{\"indices\": {\"sf\": {\"*\": [\"READ\"]}}}\n" +
+				"{\"create\": {\"_id\": \"bulk_role3\"}}\n" + "{\"kluster\": [\"cluster:monitor*\"]}\n" +
+				"{\"delete\": {\"_id\": \"sg_transport_client\"}}\n" +
+				"{\"delete\": {\"_id\": \"sg_role_starfleet_captains\"}}\n";
+
+		HttpResponse response = rh.executePostRequest("/_searchguard/api/roles/_bulk", bulk, new Header[0]);
+		Assert.assertEquals(response.getBody(), HttpStatus.SC_OK, response.getStatusCode());
+		JsonNode node = new ObjectMapper().readTree(response.getBody());
+		Assert.assertTrue(node.get("errors").asBoolean());
+		Assert.assertEquals(HttpStatus.SC_CREATED, node.get("items").get(0).get("create").get("status").asInt());
+		Assert.assertEquals(HttpStatus.SC_CREATED, node.get("items").get(1).get("index").get("status").asInt());
+		Assert.assertEquals(HttpStatus.SC_BAD_REQUEST, node.get("items").get(2).get("create").get("status").asInt());
+		Assert.assertEquals("kluster", node.get("items").get(2).get("create").get("error").get(AbstractConfigurationValidator.INVALID_KEYS_KEY).get("keys").asText());
+		Assert.assertEquals(HttpStatus.SC_FORBIDDEN, node.get("items").get(3).get("delete").get("status").asInt());
+		Assert.assertEquals(HttpStatus.SC_OK, node.get("items").get(4).get("delete").get("status").asInt());
+
+		response = rh.executeGetRequest("/_searchguard/api/roles/bulk_role1", new Header[0]);
+		Assert.assertEquals(HttpStatus.SC_OK, response.getStatusCode());
+		response = rh.executeGetRequest("/_searchguard/api/roles/bulk_role2", new Header[0]);
+		Assert.assertEquals(HttpStatus.SC_OK, response.getStatusCode());
+		Settings settings = Settings.builder().loadFromSource(response.getBody(), XContentType.JSON).build();
+		Assert.assertEquals("READ", settings.getAsList("bulk_role2.indices.sf.*").get(0));
+		response = rh.executeGetRequest("/_searchguard/api/roles/bulk_role3", new Header[0]);
+		Assert.assertEquals(HttpStatus.SC_NOT_FOUND, response.getStatusCode());
+		response = rh.executeGetRequest("/_searchguard/api/roles/sg_transport_client", new Header[0]);
+		Assert.assertEquals(HttpStatus.SC_OK, response.getStatusCode());
+		response = rh.executeGetRequest("/_searchguard/api/roles/sg_role_starfleet_captains", new Header[0]);
+		Assert.assertEquals(HttpStatus.SC_NOT_FOUND, response.getStatusCode());
+
+		// nothing applicable, nothing written
+		response = rh.executePostRequest("/_searchguard/api/roles/_bulk", "{\"update\": {\"_id\": \"nothinghthere\"}}\n{\"cluster\": []}\n", new Header[0]);
+		Assert.assertEquals(HttpStatus.SC_OK, response.getStatusCode());
+		node = new ObjectMapper().readTree(response.getBody());
+		Assert.assertEquals(HttpStatus.SC_NOT_FOUND, node.get("items").get(0).get("update").get("status").asInt());
+	}
+
+	@Test
+	public void testRolesReservedNames() throws Exception {
+
+		setup();
+
+		rh.keystore = "kirk-keystore.jks";
+		rh.sendHTTPClientCertificate = true;
+
+		// names of collection endpoints cannot be used for resources
+		HttpResponse response = rh.executePutRequest("/_searchguard/api/roles/_bulk", "{\"cluster\": [\"*\"]}", new Header[0]);
+		Assert.assertEquals(HttpStatus.SC_BAD_REQUEST, response.getStatusCode());
+		response = rh.executePutRequest("/_searchguard/api/roles/_patch", "{\"cluster\": [\"*\"]}", new Header[0]);
+		Assert.assertEquals(HttpStatus.SC_BAD_REQUEST, response.getStatusCode());
+		response = rh.executePutRequest("/_searchguard/api/roles/_mget", "{\"cluster\": [\"*\"]}", new Header[0]);
+		Assert.assertEquals(HttpStatus.SC_BAD_REQUEST, response.getStatusCode());
+
+		response = rh.executePostRequest("/_searchguard/api/roles/_bulk", "{\"index\": {\"_id\": \"_mget\"}}\n{\"cluster\": [\"*\"]}\n",
+				new Header[0]);
+		Assert.assertEquals(HttpStatus.SC_OK, response.getStatusCode());
+		final JsonNode node = new ObjectMapper().readTree(response.getBody());
+		Assert.assertEquals(HttpStatus.SC_BAD_REQUEST, node.get("items").get(0).get("index").get("status").asInt());
+
+		response = rh.executePostRequest("/_searchguard/api/roles/_patch",
+				"[{\"op\": \"add\", \"path\": \"/_bulk\", \"value\": {\"cluster\": [\"*\"]}}]", new Header[0]);
+		Assert.assertEquals(HttpStatus.SC_BAD_REQUEST, response.getStatusCode());
+
+		response = rh.executeGetRequest("/_searchguard/api/roles/_bulk", new Header[0]);
+		Assert.assertEquals(HttpStatus.SC_NOT_FOUND, response.getStatusCode());
+	}
+
+	@Test
+	public void testRolesPatchApi() throws Exception {
+
+		setup();
+
+		rh.keystore = "kirk-keystore.jks";
+		rh.sendHTTPClientCertificate = true;
+
+		// add a single permission to an existing role
+		HttpResponse response = rh.executePostRequest("/_searchguard/api/roles/sg_role_starfleet/_patch",
+				"[{\"op\": \"add\", \"path\": \"/cluster/-\", \"value\": \"indices:data/read/mget\"}]", new Header[0]);
+		Assert.assertEquals(response.getBody(), HttpStatus.SC_OK, response.getStatusCode());
+		response = rh.executeGetRequest("/_searchguard/api/roles/sg_role_starfleet", new Header[0]);
+		Settings settings = Settings.builder().loadFromSource(response.getBody(), XContentType.JSON).build();
+		Assert.assertEquals(4, settings.getAsList("sg_role_starfleet.cluster").size());
+		Assert.assertEquals("indices:data/read/mget", settings.getAsList("sg_role_starfleet.cluster").get(3));
+		Assert.assertEquals("READ", settings.getAsList("sg_role_starfleet.indices.sf.ships").get(0));
+
+		// result is validated
+		response = rh.executePostRequest("/_searchguard/api/roles/sg_role_starfleet/_patch",
+				"[{\"op\": \"add\", \"path\": \"/kluster\", \"value\": []}]", new Header[0]);
+		Assert.assertEquals(HttpStatus.SC_BAD_REQUEST, response.getStatusCode());
+		settings = Settings.builder().loadFromSource(response.getBody(), XContentType.JSON).build();
+		Assert.assertEquals(AbstractConfigurationValidator.ErrorType.INVALID_CONFIGURATION.getMessage(), settings.get("reason"));
+
+		// failed test operation
+		response = rh.executePostRequest("/_searchguard/api/roles/sg_role_starfleet/_patch",
+				"[{\"op\": \"test\", \"path\": \"/cluster/0\", \"value\": \"nope\"}, {\"op\": \"remove\", \"path\": \"/cluster\"}]", new Header[0]);
+		Assert.assertEquals(HttpStatus.SC_CONFLICT, response.getStatusCode());
+
+		// invalid path
+		response = rh.executePostRequest("/_searchguard/api/roles/sg_role_starfleet/_patch",
+				"[{\"op\": \"remove\", \"path\": \"/nothinghthere\"}]", new Header[0]);
+		Assert.assertEquals(HttpStatus.SC_BAD_REQUEST, response.getStatusCode());
+		Assert.assertTrue(response.getBody().contains("No value at /nothinghthere"));
+
+		// not a patch
+		response = rh.executePostRequest("/_searchguard/api/roles/sg_role_starfleet/_patch", "{\"cluster\": []}", new Header[0]);
+		Assert.assertEquals(HttpStatus.SC_BAD_REQUEST, response.getStatusCode());
+
+		// read only and missing resources
+		response = rh.executePostRequest("/_searchguard/api/roles/sg_transport_client/_patch",
+				"[{\"op\": \"remove\", \"path\": \"/cluster\"}]", new Header[0]);
+		Assert.assertEquals(HttpStatus.SC_FORBIDDEN, response.getStatusCode());
+		response = rh.executePostRequest("/_searchguard/api/roles/nothinghthere/_patch",
+				"[{\"op\": \"remove\", \"path\": \"/cluster\"}]", new Header[0]);
+		Assert.assertEquals(HttpStatus.SC_NOT_FOUND, response.getStatusCode());
+
+		// patch the whole collection, add and remove roles
+		response = rh.executePostRequest("/_searchguard/api/roles/_patch",
+				"[{\"op\": \"remove\", \"path\": \"/sg_role_starfleet_captains\"}, {\"op\": \"add\", \"path\": \"/sg_role_patched\", \"value\": {\"cluster\": [\"cluster:monitor*\"]}}]",
+				new Header[0]);
+		Assert.assertEquals(response.getBody(), HttpStatus.SC_OK, response.getStatusCode());
+		response = rh.executeGetRequest("/_searchguard/api/roles/sg_role_starfleet_captains", new Header[0]);
+		Assert.assertEquals(HttpStatus.SC_NOT_FOUND, response.getStatusCode());
+		response = rh.executeGetRequest("/_searchguard/api/roles/sg_role_patched", new Header[0]);
+		Assert.assertEquals(HttpStatus.SC_OK, response.getStatusCode());
+
+		// collection patch touching a read only role
+		response = rh.executePostRequest("/_searchguard/api/roles/_patch",
+				"[{\"op\": \"remove\", \"path\": \"/sg_transport_client\"}]", new Header[0]);
+		Assert.assertEquals(HttpStatus.SC_FORBIDDEN, response.getStatusCode());
+	}
+
+	@Test
+	public void testRolesPagingApi() throws Exception {
+
+		setup();
+
+		rh.keystore = "kirk-keystore.jks";
+		rh.sendHTTPClientCertificate = true;
+
+		HttpResponse response = rh.executeGetRequest("/_searchguard/api/roles/?size=2", new Header[0]);
+		Assert.assertEquals(response.getBody(), HttpStatus.SC_OK, response.getStatusCode());
+		JsonNode page = new ObjectMapper().readTree(response.getBody());
+		Assert.assertEquals("[sg_admin, sg_all_access]", names(page));
+		Assert.assertEquals("sg_all_access", page.get("next").asText());
+
+		response = rh.executeGetRequest("/_searchguard/api/roles/?size=2&search_after=sg_all_access", new Header[0]);
+		page = new ObjectMapper().readTree(response.getBody());
+		Assert.assertEquals("[sg_flsdls, sg_kibana4]", names(page));
+
+		response = rh.executeGetRequest("/_searchguard/api/roles/?name_filter=sg_role_klingons*", new Header[0]);
+		page = new ObjectMapper().readTree(response.getBody());
+		Assert.assertEquals("[sg_role_klingons1, sg_role_klingons2]", names(page));
+		Assert.assertNull(page.get("next"));
+		Assert.assertTrue(page.get("resources").get("sg_role_klingons1").has("indices"));
+
+		response = rh.executeGetRequest("/_searchguard/api/roles/?name_filter=sg_role_klingons*&sort=name:desc&size=1", new Header[0]);
+		page = new ObjectMapper().readTree(response.getBody());
+		Assert.assertEquals("[sg_role_klingons2]", names(page));
+		Assert.assertEquals("sg_role_klingons2", page.get("next").asText());
+
+		response = rh.executeGetRequest("/_searchguard/api/roles/?name_filter=*_user&readonly=false", new Header[0]);
+		page = new ObjectMapper().readTree(response.getBody());
+		Assert.assertEquals("[sg_marvel_user, sg_power_user, sg_user]", names(page));
+
+		response = rh.executeGetRequest("/_searchguard/api/roles/?readonly=true", new Header[0]);
+		page = new ObjectMapper().readTree(response.getBody());
+		Assert.assertEquals("[sg_transport_client]", names(page));
+
+		response = rh.executeGetRequest("/_searchguard/api/roles/?sort=cluster", new Header[0]);
+		Assert.assertEquals(HttpStatus.SC_BAD_REQUEST, response.getStatusCode());
+
+		// roles have no roles to filter on
+		response = rh.executeGetRequest("/_searchguard/api/roles/?role=sg_all_access", new Header[0]);
+		Assert.assertEquals(HttpStatus.SC_BAD_REQUEST, response.getStatusCode());
+
+		// only the complete configuration is queried
+		response = rh.executeGetRequest("/_searchguard/api/roles/sg_role_klingons1?size=1", new Header[0]);
+		Assert.assertEquals(HttpStatus.SC_BAD_REQUEST, response.getStatusCode());
+		response = rh.executePutRequest("/_searchguard/api/roles/sg_role_paged?readonly=true", "{\"cluster\": [\"*\"]}", new Header[0]);
+		Assert.assertEquals(HttpStatus.SC_BAD_REQUEST, response.getStatusCode());
+
+		// export as bulk body, in pages
+		response = rh.executeGetRequest("/_searchguard/api/roles/?format=ndjson&name_filter=sg_role_klingons*&size=1", new Header[0]);
+		Assert.assertEquals(response.getBody(), HttpStatus.SC_OK, response.getStatusCode());
+		String[] lines = response.getBody().split("\n");
+		Assert.assertEquals(2, lines.length);
+		Assert.assertEquals("{\"index\":{\"_id\":\"sg_role_klingons1\"}}", lines[0]);
+		Assert.assertEquals("sg_role_klingons1", response.getInner().getFirstHeader("X-Search-After").getValue());
+
+		response = rh.executeGetRequest("/_searchguard/api/roles/?format=ndjson&name_filter=sg_role_klingons*&size=1&search_after=sg_role_klingons1",
+				new Header[0]);
+		lines = response.getBody().split("\n");
+		Assert.assertEquals("{\"index\":{\"_id\":\"sg_role_klingons2\"}}", lines[0]);
+		Assert.assertNull(response.getInner().getFirstHeader("X-Search-After"));
+
+		// pages of an export are bounded
+		response = rh.executeGetRequest("/_searchguard/api/roles/?format=ndjson&size=" + (ResourceQuery.NDJSON_MAX_SIZE + 1), new Header[0]);
+		Assert.assertEquals(HttpStatus.SC_BAD_REQUEST, response.getStatusCode());
+		response = rh.executeGetRequest("/_searchguard/api/roles/?format=ndjson&size=0", new Header[0]);
+		Assert.assertEquals(HttpStatus.SC_BAD_REQUEST, response.getStatusCode());
+		response = rh.executeGetRequest("/_searchguard/api/roles/?format=ndjson", new Header[0]);
+		Assert.assertEquals(response.getBody(), HttpStatus.SC_OK, response.getStatusCode());
+		Assert.assertNull(response.getInner().getFirstHeader("X-Search-After"));
+
+		// and import it again
+		response = rh.executePostRequest("/_searchguard/api/roles/_bulk", response.getBody(), new Header[0]);
+		Assert.assertEquals(response.getBody(), HttpStatus.SC_OK, response.getStatusCode());
+	}
+
+	@Test
+	public void testRolesMgetApi() throws Exception {
+
+		setup();
+
+		rh.keystore = "kirk-keystore.jks";
+		rh.sendHTTPClientCertificate = true;
+
+		HttpResponse response = rh.executePostRequest("/_searchguard/api/roles/_mget",
+				"{\"names\": [\"sg_role_starfleet\", \"nothinghere\", \"sg_role_klingons1\"]}", new Header[0]);
+		Assert.assertEquals(response.getBody(), HttpStatus.SC_OK, response.getStatusCode());
+		final JsonNode body = new ObjectMapper().readTree(response.getBody());
+		Assert.assertEquals("[sg_role_starfleet, sg_role_klingons1]", names(body));
+		Assert.assertEquals(1, body.get("not_found").size());
+		Assert.assertEquals("nothinghere", body.get("not_found").get(0).asText());
+		Assert.assertNotNull(response.getInner().getFirstHeader("ETag"));
+
+		response = rh.executePostRequest("/_searchguard/api/roles/_mget", "{\"names\": \"sg_role_starfleet\"}", new Header[0]);
+		Assert.assertEquals(HttpStatus.SC_BAD_REQUEST, response.getStatusCode());
+		response = rh.executePostRequest("/_searchguard/api/roles/_mget", "", new Header[0]);
+		Assert.assertEquals(HttpStatus.SC_BAD_REQUEST, response.getStatusCode());
+	}
+
+	private static String names(final JsonNode page) {
+		final List<String> names = new ArrayList<>();
+		page.get("resources").fieldNames().forEachRemaining(names::add);
+		return names.toString();
+	}
+
+	@Test
+	public void testRolesUnchangedApi() throws Exception {
+
+		setup();
+
+		rh.keystore = "kirk-keystore.jks";
+		rh.sendHTTPClientCertificate = true;
+
+		// put the role exactly as it is stored
+		HttpResponse response = rh.executeGetRequest("/_searchguard/api/roles/sg_role_starfleet", new Header[0]);
+		Assert.assertEquals(HttpStatus.SC_OK, response.getStatusCode());
+		final String role = new ObjectMapper().readTree(response.getBody()).get("sg_role_starfleet").toString();
+
+		response = rh.executePutRequest("/_searchguard/api/roles/sg_role_starfleet", role, new Header[0]);
+		Assert.assertEquals(response.getBody(), HttpStatus.SC_OK, response.getStatusCode());
+		Assert.assertFalse(new ObjectMapper().readTree(response.getBody()).get("changed").asBoolean(true));
+
+		response = rh.executePutRequest("/_searchguard/api/roles/sg_role_starfleet", "{\"cluster\": [\"*\"]}", new Header[0]);
+		Assert.assertEquals(response.getBody(), HttpStatus.SC_OK, response.getStatusCode());
+		Assert.assertNull(new ObjectMapper().readTree(response.getBody()).get("changed"));
+
+		response = rh.executePostRequest("/_searchguard/api/roles/_patch",
+				"[{\"op\": \"test\", \"path\": \"/sg_role_starfleet/cluster/0\", \"value\": \"*\"}]", new Header[0]);
+		Assert.assertEquals(response.getBody(), HttpStatus.SC_OK, response.getStatusCode());
+		Assert.assertFalse(new ObjectMapper().readTree(response.getBody()).get("changed").asBoolean(true));
+	}
+
+	@Test
+	public void testRolesConcurrencyApi() throws Exception {
+
+		setup();
+
+		rh.keystore = "kirk-keystore.jks";
+		rh.sendHTTPClientCertificate = true;
+
+		HttpResponse response = rh.executeGetRequest("/_searchguard/api/roles/sg_role_starfleet", new Header[0]);
+		Assert.assertEquals(HttpStatus.SC_OK, response.getStatusCode());
+		final String etag = response.getInner().getFirstHeader("ETag").getValue();
+
+		// write with the version that has been read
+		response = rh.executePutRequest("/_searchguard/api/roles/sg_role_starfleet", "{\"cluster\": [\"*\"]}", new BasicHeader("If-Match", etag));
+		Assert.assertEquals(response.getBody(), HttpStatus.SC_OK, response.getStatusCode());
+		final String newEtag = response.getInner().getFirstHeader("ETag").getValue();
+		Assert.assertNotEquals(etag, newEtag);
+
+		// stale version
+		response = rh.executePutRequest("/_searchguard/api/roles/sg_role_starfleet", "{\"cluster\": [\"indices:*\"]}", new BasicHeader("If-Match", etag));
+		Assert.assertEquals(response.getBody(), HttpStatus.SC_CONFLICT, response.getStatusCode());
+		response = rh.executeDeleteRequest("/_searchguard/api/roles/sg_role_starfleet", new BasicHeader("If-Match", etag));
+		Assert.assertEquals(response.getBody(), HttpStatus.SC_CONFLICT, response.getStatusCode());
+		response = rh.executePostRequest("/_searchguard/api/roles/_bulk", "{\"delete\": {\"_id\": \"sg_role_starfleet\"}}\n", new BasicHeader("If-Match", etag));
+		Assert.assertEquals(response.getBody(), HttpStatus.SC_CONFLICT, response.getStatusCode());
+		response = rh.executePostRequest("/_searchguard/api/roles/_patch", "[{\"op\": \"remove\", \"path\": \"/sg_role_starfleet\"}]", new BasicHeader("If-Match", etag));
+		Assert.assertEquals(response.getBody(), HttpStatus.SC_CONFLICT, response.getStatusCode());
+		response = rh.executeGetRequest("/_searchguard/api/roles/sg_role_starfleet", new Header[0]);
+		Assert.assertEquals(HttpStatus.SC_OK, response.getStatusCode());
+		Assert.assertEquals(newEtag, response.getInner().getFirstHeader("ETag").getValue());
+
+		// conditional reads
+		response = rh.executeGetRequest("/_searchguard/api/roles/sg_role_starfleet", new BasicHeader("If-None-Match", newEtag));
+		Assert.assertEquals(HttpStatus.SC_NOT_MODIFIED, response.getStatusCode());
+		Assert.assertEquals(newEtag, response.getInner().getFirstHeader("ETag").getValue());
+		response = rh.executeGetRequest("/_searchguard/api/roles/", new BasicHeader("If-None-Match", newEtag));
+		Assert.assertEquals(HttpStatus.SC_NOT_MODIFIED, response.getStatusCode());
+		response = rh.executeGetRequest("/_searchguard/api/roles/sg_role_starfleet", new BasicHeader("If-None-Match", etag));
+		Assert.assertEquals(HttpStatus.SC_OK, response.getStatusCode());
+		response = rh.executeGetRequest("/_searchguard/api/roles/nothinghere", new BasicHeader("If-None-Match", newEtag));
+		Assert.assertEquals(HttpStatus.SC_NOT_FOUND, response.getStatusCode());
+
+		response = rh.executePutRequest("/_searchguard/api/roles/sg_role_starfleet", "{\"cluster\": [\"*\"]}", new BasicHeader("If-Match", "nope"));
+		Assert.assertEquals(response.getBody(), HttpStatus.SC_BAD_REQUEST, response.getStatusCode());
+
+		// concurrent writers without a version do not lose updates
+		final int writers = 8;
+		final ExecutorService executor = Executors.newFixedThreadPool(writers);
+		final List<Future<HttpResponse>> futures = new ArrayList<>();
+		try {
+			for (int i = 0; i < writers; i++) {
+				final String role = "sg_role_concurrent" + i;
+				futures.add(executor.submit(() -> rh.executePutRequest("/_searchguard/api/roles/" + role, "{\"cluster\": [\"*\"]}", new Header[0])));
+			}
+			for (final Future<HttpResponse> future : futures) {
+				Assert.assertEquals(future.get().getBody(), HttpStatus.SC_CREATED, future.get().getStatusCode());
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		for (int i = 0; i < writers; i++) {
+			response = rh.executeGetRequest("/_searchguard/api/roles/sg_role_concurrent" + i, new Header[0]);
+			Assert.assertEquals(HttpStatus.SC_OK, response.getStatusCode());
+		}
+	}
+
+	@Test
+	public void testRolesReadAfterWriteApi() throws Exception {
+
+		setup();
+
+		rh.keystore = "kirk-keystore.jks";
+		rh.sendHTTPClientCertificate = true;
+
+		// reads are served from memory, each GET must see the write before it
+		HttpResponse response = rh.executePutRequest("/_searchguard/api/roles/sg_role_read_after_write", "{\"cluster\": [\"*\"]}", new Header[0]);
+		Assert.assertEquals(response.getBody(), HttpStatus.SC_CREATED, response.getStatusCode());
+		response = rh.executeGetRequest("/_searchguard/api/roles/sg_role_read_after_write", new Header[0]);
+		Assert.assertEquals(HttpStatus.SC_OK, response.getStatusCode());
+		Assert.assertEquals("*", new ObjectMapper().readTree(response.getBody()).at("/sg_role_read_after_write/cluster/0").asText());
+
+		response = rh.executePutRequest("/_searchguard/api/roles/sg_role_read_after_write", "{\"cluster\": [\"cluster:monitor/*\"]}", new Header[0]);
+		Assert.assertEquals(response.getBody(), HttpStatus.SC_OK, response.getStatusCode());
+		response = rh.executeGetRequest("/_searchguard/api/roles/sg_role_read_after_write", new Header[0]);
+		Assert.assertEquals(HttpStatus.SC_OK, response.getStatusCode());
+		Assert.assertEquals("cluster:monitor/*", new ObjectMapper().readTree(response.getBody()).at("/sg_role_read_after_write/cluster/0").asText());
+		response = rh.executeGetRequest("/_searchguard/api/roles", new Header[0]);
+		Assert.assertEquals(HttpStatus.SC_OK, response.getStatusCode());
+		Assert.assertEquals("cluster:monitor/*", new ObjectMapper().readTree(response.getBody()).at("/sg_role_read_after_write/cluster/0").asText());
+
+		response = rh.executeDeleteRequest("/_searchguard/api/roles/sg_role_read_after_write", new Header[0]);
+		Assert.assertEquals(response.getBody(), HttpStatus.SC_OK, response.getStatusCode());
+		response = rh.executeGetRequest("/_searchguard/api/roles/sg_role_read_after_write", new Header[0]);
+		Assert.assertEquals(HttpStatus.SC_NOT_FOUND, response.getStatusCode());
+	}
 }
@@ -23,6 +23,8 @@ import org.elasticsearch.common.xcontent.XContentType;
 import org.junit.Assert;
 import org.junit.Test;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.floragunn.searchguard.dlic.rest.validation.AbstractConfigurationValidator;
 import com.floragunn.searchguard.support.ConfigConstants;
 import com.floragunn.searchguard.test.helper.file.FileHelper;
@@ -239,4 +241,176 @@ public class UserApiTest extends AbstractRestApiUnitTest {
 
 	}
 
+	@Test
+	public void testBulkUserApi() throws Exception {
+
+		setup();
+
+		rh.keystore = "kirk-keystore.jks";
+		rh.sendHTTPClientCertificate = true;
+
+		// malformed body
+		HttpResponse response = rh.executePostRequest("/_searchguard/api/internalusers/_bulk", "{\"create\": {}}\n{}\n", new Header[0]);
+		Assert.assertEquals(response.getBody(), HttpStatus.SC_BAD_REQUEST, response.getStatusCode());
+
+		final String bulk = 
+				"{\"create\": {\"_id\": \"bulk1\"}}\n" + "{\"password\": \"bulk1\", \"roles\": [\"starfleet\"]}\n" + 
+				"{\"create\": {\"_id\": \"admin\"}}\n" + "{\"password\": \"admin\"}\n" + 
+				"{\"index\": {\"_id\": \"bulk2\"}}\n" + "{\"hash\": \"$2a$12$n5nubfWATfQjSYHiWtUyeOxMIxFInUHOAx8VMmGmxFNPGpaBmeB.m\"}\n" + 
+				"{\"update\": {\"_id\": \"nothinghthere\"}}\n" + "{\"password\": \"x\"}\n" + 
+				"{\"update\": {\"_id\": \"other\"}}\n" + "{\"roles\": [\"captains\"]}\n" + 
+				"{\"delete\": {\"_id\": \"sarek\"}}\n" + 
+				"{\"delete\": {\"_id\": \"test\"}}\n" + 
+				"{\"create\": {\"_id\": \"bulk3\"}}\n" + "{\"roles\": [\"starfleet\"]}\n" + 
+				"{\"create\": {\"_id\": \"bulk4\"}}\n" + "{\"some\": \"thing\"}\n";
+
+		response = rh.executePostRequest("/_searchguard/api/internalusers/_bulk", bulk, new Header[0]);
+		Assert.assertEquals(response.getBody(), HttpStatus.SC_OK, response.getStatusCode());
+		JsonNode node = new ObjectMapper().readTree(response.getBody());
+		Assert.assertTrue(node.get("errors").asBoolean());
+		Assert.assertEquals(201, node.get("items").get(0).get("create").get("status").asInt());
+		Assert.assertEquals(409, node.get("items").get(1).get("create").get("status").asInt());
+		Assert.assertEquals(201, node.get("items").get(2).get("index").get("status").asInt());
+		Assert.assertEquals(404, node.get("items").get(3).get("update").get("status").asInt());
+		Assert.assertEquals(200, node.get("items").get(4).get("update").get("status").asInt());
+		Assert.assertEquals(403, node.get("items").get(5).get("delete").get("status").asInt());
+		Assert.assertEquals(200, node.get("items").get(6).get("delete").get("status").asInt());
+		Assert.assertEquals(400, node.get("items").get(7).get("create").get("status").asInt());
+		Assert.assertEquals(400, node.get("items").get(8).get("create").get("status").asInt());
+		Assert.assertEquals(AbstractConfigurationValidator.ErrorType.INVALID_CONFIGURATION.getMessage(), node.get("items").get(8).get("create").get("error").get("reason").asText());
+
+		// all successful items have been applied with a single write
+		response = rh.executeGetRequest("/_searchguard/api/internalusers/bulk1", new Header[0]);
+		Assert.assertEquals(HttpStatus.SC_OK, response.getStatusCode());
+		Settings settings = Settings.builder().loadFromSource(response.getBody(), XContentType.JSON).build();
+		Assert.assertNull(settings.get("bulk1.password"));
+		Assert.assertEquals("starfleet", settings.getAsList("bulk1.roles").get(0));
+		rh.sendHTTPClientCertificate = false;
+		Assert.assertEquals(HttpStatus.SC_OK, rh.executeGetRequest("_searchguard/authinfo", encodeBasicHeader("bulk1", "bulk1")).getStatusCode());
+		Assert.assertEquals(HttpStatus.SC_UNAUTHORIZED, rh.executeGetRequest("_searchguard/authinfo", encodeBasicHeader("bulk1", "wrong")).getStatusCode());
+		rh.sendHTTPClientCertificate = true;
+
+		response = rh.executeGetRequest("/_searchguard/api/internalusers/bulk2", new Header[0]);
+		Assert.assertEquals(HttpStatus.SC_OK, response.getStatusCode());
+
+		// hash of existing user is kept on update
+		response = rh.executeGetRequest("/_searchguard/api/internalusers/other", new Header[0]);
+		settings = Settings.builder().loadFromSource(response.getBody(), XContentType.JSON).build();
+		Assert.assertNotNull(settings.get("other.hash"));
+		Assert.assertEquals("captains", settings.getAsList("other.roles").get(0));
+
+		// users can be filtered by role
+		response = rh.executeGetRequest("/_searchguard/api/internalusers/?role=captains", new Header[0]);
+		Assert.assertEquals(response.getBody(), HttpStatus.SC_OK, response.getStatusCode());
+		node = new ObjectMapper().readTree(response.getBody());
+		Assert.assertTrue(node.get("resources").has("other"));
+		Assert.assertFalse(node.get("resources").has("bulk1"));
+
+		response = rh.executeGetRequest("/_searchguard/api/internalusers/test", new Header[0]);
+		Assert.assertEquals(HttpStatus.SC_NOT_FOUND, response.getStatusCode());
+		response = rh.executeGetRequest("/_searchguard/api/internalusers/sarek", new Header[0]);
+		Assert.assertEquals(HttpStatus.SC_OK, response.getStatusCode());
+		response = rh.executeGetRequest("/_searchguard/api/internalusers/bulk3", new Header[0]);
+		Assert.assertEquals(HttpStatus.SC_NOT_FOUND, response.getStatusCode());
+	}
+
+	@Test
+	public void testPatchUserApi() throws Exception {
+
+		setup();
+
+		rh.keystore = "kirk-keystore.jks";
+		rh.sendHTTPClientCertificate = true;
+
+		// change password only, roles and everything else are kept
+		HttpResponse response = rh.executePostRequest("/_searchguard/api/internalusers/test/_patch",
+				"[{\"op\": \"add\", \"path\": \"/password\", \"value\": \"newpassword\"}, {\"op\": \"add\", \"path\": \"/roles\", \"value\": [\"starfleet\"]}]",
+				new Header[0]);
+		Assert.assertEquals(response.getBody(), HttpStatus.SC_OK, response.getStatusCode());
+
+		response = rh.executeGetRequest("/_searchguard/api/internalusers/test", new Header[0]);
+		Settings settings = Settings.builder().loadFromSource(response.getBody(), XContentType.JSON).build();
+		Assert.assertNull(settings.get("test.password"));
+		Assert.assertNotEquals("$2a$12$1HqHxm3QTfzwkse7vwzhFOV4gDv787cZ8BwmCwNEyJhn0CZoo8VVu", settings.get("test.hash"));
+		Assert.assertEquals("starfleet", settings.getAsList("test.roles").get(0));
+
+		rh.sendHTTPClientCertificate = false;
+		Assert.assertEquals(HttpStatus.SC_OK, rh.executeGetRequest("_searchguard/authinfo", encodeBasicHeader("test", "newpassword")).getStatusCode());
+		rh.sendHTTPClientCertificate = true;
+
+		// removing the hash without a new password is not possible
+		response = rh.executePostRequest("/_searchguard/api/internalusers/_patch",
+				"[{\"op\": \"remove\", \"path\": \"/test/hash\"}, {\"op\": \"add\", \"path\": \"/newuser\", \"value\": {\"roles\": []}}]",
+				new Header[0]);
+		Assert.assertEquals(HttpStatus.SC_BAD_REQUEST, response.getStatusCode());
+		response = rh.executeGetRequest("/_searchguard/api/internalusers/newuser", new Header[0]);
+		Assert.assertEquals(HttpStatus.SC_NOT_FOUND, response.getStatusCode());
+	}
+
+	@Test
+	public void testUnchangedUserApi() throws Exception {
+
+		setup();
+
+		rh.keystore = "kirk-keystore.jks";
+		rh.sendHTTPClientCertificate = true;
+
+		HttpResponse response = rh.executePutRequest("/_searchguard/api/internalusers/nochange",
+				"{\"password\": \"nochange\", \"roles\": [\"starfleet\"]}", new Header[0]);
+		Assert.assertEquals(response.getBody(), HttpStatus.SC_CREATED, response.getStatusCode());
+		Assert.assertFalse(response.getBody(), response.getBody().contains("\"changed\""));
+
+		// same password is hashed again by default
+		response = rh.executePutRequest("/_searchguard/api/internalusers/nochange",
+				"{\"password\": \"nochange\", \"roles\": [\"starfleet\"]}", new Header[0]);
+		Assert.assertEquals(response.getBody(), HttpStatus.SC_OK, response.getStatusCode());
+		Assert.assertFalse(response.getBody(), response.getBody().contains("\"changed\""));
+
+		// on request the same password keeps the existing hash, nothing is written
+		response = rh.executePutRequest("/_searchguard/api/internalusers/nochange?keep_unchanged_password=true",
+				"{\"password\": \"nochange\", \"roles\": [\"starfleet\"]}", new Header[0]);
+		Assert.assertEquals(response.getBody(), HttpStatus.SC_OK, response.getStatusCode());
+		Assert.assertFalse(new ObjectMapper().readTree(response.getBody()).get("changed").asBoolean(true));
+
+		// no password, the hash of the existing user is kept
+		response = rh.executePutRequest("/_searchguard/api/internalusers/nochange", "{\"roles\": [\"starfleet\"]}", new Header[0]);
+		Assert.assertEquals(response.getBody(), HttpStatus.SC_OK, response.getStatusCode());
+		Assert.assertFalse(new ObjectMapper().readTree(response.getBody()).get("changed").asBoolean(true));
+
+		// different roles
+		response = rh.executePutRequest("/_searchguard/api/internalusers/nochange", "{\"roles\": [\"captains\"]}", new Header[0]);
+		Assert.assertEquals(response.getBody(), HttpStatus.SC_OK, response.getStatusCode());
+		Assert.assertFalse(response.getBody(), response.getBody().contains("\"changed\""));
+
+		final String bulk =
+				"{\"index\": {\"_id\": \"nochange\"}}\n" + "{\"password\": \"nochange\", \"roles\": [\"captains\"]}\n" +
+				"{\"update\": {\"_id\": \"other\"}}\n" + "{\"roles\": [\"captains\"]}\n";
+		response = rh.executePostRequest("/_searchguard/api/internalusers/_bulk?keep_unchanged_password=true", bulk, new Header[0]);
+		Assert.assertEquals(response.getBody(), HttpStatus.SC_OK, response.getStatusCode());
+		JsonNode node = new ObjectMapper().readTree(response.getBody());
+		Assert.assertFalse(node.get("errors").asBoolean());
+		Assert.assertEquals("noop", node.get("items").get(0).get("index").get("result").asText());
+		Assert.assertEquals("updated", node.get("items").get(1).get("update").get("result").asText());
+
+		rh.sendHTTPClientCertificate = false;
+		Assert.assertEquals(HttpStatus.SC_OK, rh.executeGetRequest("_searchguard/authinfo", encodeBasicHeader("nochange", "nochange")).getStatusCode());
+		rh.sendHTTPClientCertificate = true;
+
+		// a patch that results in the same resource
+		response = rh.executePostRequest("/_searchguard/api/internalusers/nochange/_patch",
+				"[{\"op\": \"replace\", \"path\": \"/roles/0\", \"value\": \"captains\"}]", new Header[0]);
+		Assert.assertEquals(response.getBody(), HttpStatus.SC_OK, response.getStatusCode());
+		Assert.assertFalse(new ObjectMapper().readTree(response.getBody()).get("changed").asBoolean(true));
+
+		// the password is checked against the hash just written, not a copy
+		// that has not been propagated yet
+		response = rh.executePutRequest("/_searchguard/api/internalusers/nochange",
+				"{\"password\": \"changed\", \"roles\": [\"captains\"]}", new Header[0]);
+		Assert.assertEquals(response.getBody(), HttpStatus.SC_OK, response.getStatusCode());
+		response = rh.executePutRequest("/_searchguard/api/internalusers/nochange?keep_unchanged_password=true",
+				"{\"password\": \"changed\", \"roles\": [\"captains\"]}", new Header[0]);
+		Assert.assertEquals(response.getBody(), HttpStatus.SC_OK, response.getStatusCode());
+		Assert.assertFalse(new ObjectMapper().readTree(response.getBody()).get("changed").asBoolean(true));
+	}
+
 }
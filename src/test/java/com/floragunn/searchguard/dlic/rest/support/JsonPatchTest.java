@@ -0,0 +1,88 @@
+/*
+ * Copyright 2016-2017 by floragunn GmbH - All rights reserved
+ *
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed here is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * This software is free of charge for non-commercial and academic use.
+ * For commercial use in a production environment you have to obtain a license
+ * from https://floragunn.com
+ *
+ */
+package com.floragunn.searchguard.dlic.rest.support;
+
+import java.util.Map;
+
+import org.elasticsearch.ElasticsearchParseException;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.floragunn.searchguard.dlic.rest.support.JsonPatch.JsonPatchException;
+
+public class JsonPatchTest {
+
+	@Test
+	public void testOperations() throws Exception {
+		// examples from RFC 6902, appendix A
+		assertPatch("{\"foo\":\"bar\"}", "[{\"op\":\"add\",\"path\":\"/baz\",\"value\":\"qux\"}]", "{\"baz\":\"qux\",\"foo\":\"bar\"}");
+		assertPatch("{\"foo\":[\"bar\",\"baz\"]}", "[{\"op\":\"add\",\"path\":\"/foo/1\",\"value\":\"qux\"}]", "{\"foo\":[\"bar\",\"qux\",\"baz\"]}");
+		assertPatch("{\"foo\":[\"bar\"]}", "[{\"op\":\"add\",\"path\":\"/foo/-\",\"value\":[\"abc\"]}]", "{\"foo\":[\"bar\",[\"abc\"]]}");
+		assertPatch("{\"baz\":\"qux\",\"foo\":\"bar\"}", "[{\"op\":\"remove\",\"path\":\"/baz\"}]", "{\"foo\":\"bar\"}");
+		assertPatch("{\"foo\":[\"bar\",\"qux\",\"baz\"]}", "[{\"op\":\"remove\",\"path\":\"/foo/1\"}]", "{\"foo\":[\"bar\",\"baz\"]}");
+		assertPatch("{\"baz\":\"qux\",\"foo\":\"bar\"}", "[{\"op\":\"replace\",\"path\":\"/baz\",\"value\":\"boo\"}]", "{\"baz\":\"boo\",\"foo\":\"bar\"}");
+		assertPatch("{\"foo\":{\"bar\":\"baz\",\"waldo\":\"fred\"},\"qux\":{\"corge\":\"grault\"}}",
+				"[{\"op\":\"move\",\"from\":\"/foo/waldo\",\"path\":\"/qux/thud\"}]",
+				"{\"foo\":{\"bar\":\"baz\"},\"qux\":{\"corge\":\"grault\",\"thud\":\"fred\"}}");
+		assertPatch("{\"foo\":[\"all\",\"grass\",\"cows\",\"eat\"]}", "[{\"op\":\"move\",\"from\":\"/foo/1\",\"path\":\"/foo/3\"}]",
+				"{\"foo\":[\"all\",\"cows\",\"eat\",\"grass\"]}");
+		assertPatch("{\"/\":{\"~\":\"a\"}}", "[{\"op\":\"copy\",\"from\":\"/~1/~0\",\"path\":\"/b\"}]", "{\"/\":{\"~\":\"a\"},\"b\":\"a\"}");
+		assertPatch("{\"baz\":\"qux\",\"foo\":[\"a\",2,\"c\"]}",
+				"[{\"op\":\"test\",\"path\":\"/baz\",\"value\":\"qux\"},{\"op\":\"test\",\"path\":\"/foo/1\",\"value\":2}]",
+				"{\"baz\":\"qux\",\"foo\":[\"a\",2,\"c\"]}");
+	}
+
+	@Test
+	public void testErrors() throws Exception {
+		assertFails("{\"baz\":\"qux\"}", "[{\"op\":\"test\",\"path\":\"/baz\",\"value\":\"bar\"}]", true);
+		assertFails("{\"foo\":\"bar\"}", "[{\"op\":\"add\",\"path\":\"/baz/bat\",\"value\":\"qux\"}]", false);
+		assertFails("{\"foo\":\"bar\"}", "[{\"op\":\"remove\",\"path\":\"/baz\"}]", false);
+		assertFails("{\"foo\":[\"bar\"]}", "[{\"op\":\"replace\",\"path\":\"/foo/1\",\"value\":\"baz\"}]", false);
+
+		try {
+			JsonPatch.parse(new BytesArray("{\"op\":\"add\"}"));
+			Assert.fail();
+		} catch (ElasticsearchParseException e) {
+			// expected
+		}
+
+		try {
+			JsonPatch.parse(new BytesArray("[{\"op\":\"frobnicate\",\"path\":\"/a\"}]"));
+			Assert.fail();
+		} catch (ElasticsearchParseException e) {
+			// expected
+		}
+	}
+
+	private static void assertPatch(String document, String patch, String expected) {
+		Object result = JsonPatch.parse(new BytesArray(patch)).apply(toMap(document));
+		Assert.assertEquals(toMap(expected), result);
+	}
+
+	private static void assertFails(String document, String patch, boolean testFailed) {
+		try {
+			JsonPatch.parse(new BytesArray(patch)).apply(toMap(document));
+			Assert.fail("Patch " + patch + " should fail");
+		} catch (JsonPatchException e) {
+			Assert.assertEquals(testFailed, e.isTestFailed());
+		}
+	}
+
+	private static Map<String, Object> toMap(String json) {
+		return XContentHelper.convertToMap(new BytesArray(json), false, XContentType.JSON).v2();
+	}
+}
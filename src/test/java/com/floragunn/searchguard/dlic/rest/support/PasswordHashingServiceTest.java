@@ -0,0 +1,125 @@
+/*
+ * Copyright 2016-2017 by floragunn GmbH - All rights reserved
+ *
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed here is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * This software is free of charge for non-commercial and academic use.
+ * For commercial use in a production environment you have to obtain a license
+ * from https://floragunn.com
+ *
+ */
+package com.floragunn.searchguard.dlic.rest.support;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.bouncycastle.crypto.generators.OpenBSDBCrypt;
+import org.elasticsearch.action.support.PlainActionFuture;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
+import org.elasticsearch.common.util.concurrent.ThreadContext;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PasswordHashingServiceTest {
+
+	private ExecutorService executor;
+
+	@After
+	public void tearDown() {
+		if (executor != null) {
+			ThreadPool.terminate(executor, 10, TimeUnit.SECONDS);
+		}
+	}
+
+	private ExecutorService executor(final int threads, final int queueSize) {
+		executor = EsExecutors.newFixed("password_hashing_test", threads, queueSize, EsExecutors.daemonThreadFactory("password_hashing_test"),
+				new ThreadContext(Settings.EMPTY));
+		return executor;
+	}
+
+	@Test
+	public void testCost() throws Exception {
+		final PasswordHashingService service = new PasswordHashingService(executor(1, 10), 1, 5);
+		Assert.assertEquals(5, service.getCost());
+
+		final String hash = service.hash("secret".toCharArray());
+		Assert.assertTrue(hash, hash.substring(3).startsWith("$05$"));
+		Assert.assertTrue(OpenBSDBCrypt.checkPassword(hash, "secret".toCharArray()));
+	}
+
+	@Test
+	public void testHashAllKeepsOrder() throws Exception {
+		final PasswordHashingService service = new PasswordHashingService(executor(3, 100), 3, 4);
+
+		final List<char[]> passwords = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			passwords.add(("password" + i).toCharArray());
+		}
+
+		final PlainActionFuture<List<String>> future = PlainActionFuture.newFuture();
+		service.hashAll(passwords, future);
+		final List<String> hashes = future.actionGet();
+
+		Assert.assertEquals(20, hashes.size());
+		for (int i = 0; i < 20; i++) {
+			Assert.assertTrue(OpenBSDBCrypt.checkPassword(hashes.get(i), ("password" + i).toCharArray()));
+			// clear text must not be kept in memory
+			Assert.assertEquals('\0', passwords.get(i)[0]);
+		}
+	}
+
+	@Test
+	public void testHashAllMorePasswordsThanExecutorHolds() throws Exception {
+		// 2 threads and 2 queued tasks, all passwords at once would be rejected
+		final PasswordHashingService service = new PasswordHashingService(executor(2, 2), 2, 4);
+
+		final List<char[]> passwords = new ArrayList<>();
+		for (int i = 0; i < 50; i++) {
+			passwords.add(("password" + i).toCharArray());
+		}
+
+		final PlainActionFuture<List<String>> future = PlainActionFuture.newFuture();
+		service.hashAll(passwords, future);
+		final List<String> hashes = future.actionGet();
+
+		Assert.assertEquals(50, hashes.size());
+		for (int i = 0; i < 50; i++) {
+			Assert.assertTrue(OpenBSDBCrypt.checkPassword(hashes.get(i), ("password" + i).toCharArray()));
+		}
+	}
+
+	@Test
+	public void testExistingHashIsKept() throws Exception {
+		final PasswordHashingService service = new PasswordHashingService(executor(1, 10), 1, 4);
+		final String existing = service.hash("secret".toCharArray());
+
+		PlainActionFuture<String> future = PlainActionFuture.newFuture();
+		service.hash("secret".toCharArray(), existing, future);
+		Assert.assertEquals(existing, future.actionGet());
+
+		future = PlainActionFuture.newFuture();
+		service.hash("other".toCharArray(), existing, future);
+		Assert.assertNotEquals(existing, future.actionGet());
+		Assert.assertTrue(OpenBSDBCrypt.checkPassword(future.actionGet(), "other".toCharArray()));
+
+		// not a bcrypt hash
+		future = PlainActionFuture.newFuture();
+		service.hash("secret".toCharArray(), "nohash", future);
+		Assert.assertTrue(OpenBSDBCrypt.checkPassword(future.actionGet(), "secret".toCharArray()));
+
+		// a hash of another cost is replaced without checking it
+		final String otherCost = PasswordHashingService.hash("secret".toCharArray(), 5);
+		future = PlainActionFuture.newFuture();
+		service.hash("secret".toCharArray(), otherCost, future);
+		Assert.assertNotEquals(otherCost, future.actionGet());
+		Assert.assertTrue(future.actionGet(), future.actionGet().substring(3).startsWith("$04$"));
+	}
+}
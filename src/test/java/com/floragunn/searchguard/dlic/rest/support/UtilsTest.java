@@ -0,0 +1,96 @@
+/*
+ * Copyright 2016-2017 by floragunn GmbH - All rights reserved
+ *
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed here is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * This software is free of charge for non-commercial and academic use.
+ * For commercial use in a production environment you have to obtain a license
+ * from https://floragunn.com
+ *
+ */
+package com.floragunn.searchguard.dlic.rest.support;
+
+import java.util.Map;
+
+import org.elasticsearch.ElasticsearchParseException;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class UtilsTest {
+
+	@Test
+	public void testSettingsJsonToStructuredMap() throws Exception {
+		assertSameAsSettings("{}");
+		assertSameAsSettings("{\"sg_role\":{\"cluster\":[\"CLUSTER_ALL\",\"indices:data/read/mget\"],\"indices\":{\"*\":{\"*\":[\"READ\"]}}}}");
+		assertSameAsSettings("{\"picard\":{\"hash\":\"$2a$12$abc\",\"roles\":[\"captains\"],\"readonly\":true},\"worf\":{\"hash\":\"$2a$12$def\"}}");
+		assertSameAsSettings("{\"a\":{\"b.c\":\"1\",\"d\":{\"e\":2.5,\"f\":false}}}");
+		assertSameAsSettings("{\"list\":{\"0\":\"x\",\"1\":\"y\"},\"gap\":{\"0\":\"x\",\"2\":\"y\"},\"empty\":{}}");
+	}
+
+	@Test(expected = ElasticsearchParseException.class)
+	public void testDuplicateKey() throws Exception {
+		Utils.convertSettingsJsonToStructuredMap(new BytesArray("{\"a\":{\"b\":\"1\"},\"a.b\":\"2\"}"));
+	}
+
+	@Test
+	public void testStructuredMapRoundTrip() throws Exception {
+		final String json = "{\"sg_role\":{\"cluster\":[\"CLUSTER_ALL\"],\"indices\":{\"*\":{\"*\":[\"READ\"]}},\"readonly\":\"true\"}}";
+		final Map<String, Object> map = Utils.convertSettingsJsonToStructuredMap(new BytesArray(json));
+		// the write path serializes the map as it is
+		Assert.assertEquals(map, Utils.convertSettingsJsonToStructuredMap(Utils.convertStructuredMapToBytes(map)));
+	}
+
+	@Test
+	public void testStructuredMapTiming() throws Exception {
+		for (final int entries : new int[] { 1000, 10000 }) {
+			final StringBuilder json = new StringBuilder("{");
+			for (int i = 0; i < entries; i++) {
+				json.append(i == 0 ? "" : ",").append("\"user").append(i)
+						.append("\":{\"hash\":\"$2a$12$abcdefghijklmnopqrstuv\",\"roles\":[\"admin\",\"user\"],\"attributes\":{\"dept\":\"")
+						.append(i % 10).append("\"}}");
+			}
+			final BytesArray source = new BytesArray(json.append("}").toString());
+			final int iterations = 20;
+
+			// warm up both paths before measuring
+			for (int i = 0; i < iterations; i++) {
+				Utils.convertJsonToxToStructuredMap(Settings.builder().loadFromSource(source.utf8ToString(), XContentType.JSON).build());
+				Utils.convertSettingsJsonToStructuredMap(source);
+			}
+
+			long start = System.nanoTime();
+			for (int i = 0; i < iterations; i++) {
+				Utils.convertJsonToxToStructuredMap(Settings.builder().loadFromSource(source.utf8ToString(), XContentType.JSON).build());
+			}
+			final long viaSettings = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			Map<String, Object> map = null;
+			for (int i = 0; i < iterations; i++) {
+				map = Utils.convertSettingsJsonToStructuredMap(source);
+			}
+			final long direct = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for (int i = 0; i < iterations; i++) {
+				Utils.convertStructuredMapToBytes(map);
+			}
+			final long write = System.nanoTime() - start;
+
+			Assert.assertEquals(entries, map.size());
+			System.out.println(entries + " entries, per conversion: via settings " + viaSettings / iterations / 1000 + " us, direct "
+					+ direct / iterations / 1000 + " us, back to JSON " + write / iterations / 1000 + " us");
+		}
+	}
+
+	private static void assertSameAsSettings(final String json) {
+		final Settings settings = Settings.builder().loadFromSource(json, XContentType.JSON).build();
+		Assert.assertEquals(json, Utils.convertJsonToxToStructuredMap(settings), Utils.convertSettingsJsonToStructuredMap(new BytesArray(json)));
+	}
+}